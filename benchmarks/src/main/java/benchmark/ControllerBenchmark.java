@@ -0,0 +1,74 @@
+package benchmark;
+
+import config.RepositoryConfiguration;
+import controller.CurrencyRateConsoleController;
+import controller.OutputFormat;
+import model.LocalCurrency;
+import repository.CurrencyRepository;
+import service.CurrencyRateService;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of listExchangeRates through the console controller, which formats the rates with printRates.
+ * The output is written into a reused buffer, so the benchmark measures formatting rather than a terminal.
+ * Run: java -jar benchmarks/target/benchmarks.jar ControllerBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ControllerBenchmark {
+
+    private final static LocalCurrency LOCAL_CURRENCY = new LocalCurrency(Currency.getInstance("BYN"));
+    private final static LocalDate RATE_DATE = LocalDate.of(2024, 6, 1);
+
+    @Param({"TEXT", "CSV", "JSON"})
+    public OutputFormat format;
+
+    @Param({"30"})
+    public int rows;
+
+    private Path dataStore;
+    private ByteArrayOutputStream output;
+    private CurrencyRateConsoleController controller;
+    private List<String> arguments;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataStore = Files.createTempDirectory("currency-jmh");
+        HotPathBenchmarks.writeDayFile(dataStore, RATE_DATE, rows);
+
+        output = new ByteArrayOutputStream();
+        CurrencyRepository repository = new CurrencyRepository(new RepositoryConfiguration(dataStore));
+        controller = new CurrencyRateConsoleController(new CurrencyRateService(repository), LOCAL_CURRENCY,
+                new PrintStream(output, false, StandardCharsets.UTF_8), format);
+        arguments = List.of(RATE_DATE.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        HotPathBenchmarks.deleteDataStore(dataStore);
+    }
+
+    @Benchmark
+    public void listExchangeRates(Blackhole blackhole) {
+        output.reset();
+        controller.run("listExchangeRates", arguments);
+        blackhole.consume(output.size());
+    }
+}
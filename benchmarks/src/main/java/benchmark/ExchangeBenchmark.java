@@ -0,0 +1,72 @@
+package benchmark;
+
+import config.RepositoryConfiguration;
+import config.StorageType;
+import model.LocalCurrency;
+import repository.CurrencyRepository;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Currency;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of exchangeCurrency on a cached day table of 30 rows, with BigDecimal and fixed-point arithmetic.
+ * Run: java -jar benchmarks/target/benchmarks.jar ExchangeBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExchangeBenchmark {
+
+    private final static LocalCurrency LOCAL_CURRENCY = new LocalCurrency(Currency.getInstance("BYN"));
+    private final static LocalDate RATE_DATE = LocalDate.of(2024, 6, 1);
+    private final static BigDecimal AMOUNT = new BigDecimal("1250.75");
+
+    @Param({"false", "true"})
+    public boolean fixedPoint;
+
+    private Path dataStore;
+    private CurrencyRepository repository;
+    private Currency usd;
+    private Currency eur;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataStore = Files.createTempDirectory("currency-jmh");
+        HotPathBenchmarks.writeDayFile(dataStore, RATE_DATE, 30);
+        repository = new CurrencyRepository(new RepositoryConfiguration(dataStore,
+                RepositoryConfiguration.DEFAULT_CACHE_CAPACITY, StorageType.CSV, fixedPoint));
+        usd = Currency.getInstance("USD");
+        eur = Currency.getInstance("EUR");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        HotPathBenchmarks.deleteDataStore(dataStore);
+    }
+
+    @Benchmark
+    public void localToForeign(Blackhole blackhole) {
+        blackhole.consume(repository.exchangeCurrency(RATE_DATE, AMOUNT, LOCAL_CURRENCY.getLocalCurrency(), usd, LOCAL_CURRENCY));
+    }
+
+    @Benchmark
+    public void foreignToLocal(Blackhole blackhole) {
+        blackhole.consume(repository.exchangeCurrency(RATE_DATE, AMOUNT, usd, LOCAL_CURRENCY.getLocalCurrency(), LOCAL_CURRENCY));
+    }
+
+    @Benchmark
+    public void foreignToForeign(Blackhole blackhole) {
+        blackhole.consume(repository.exchangeCurrency(RATE_DATE, AMOUNT, usd, eur, LOCAL_CURRENCY));
+    }
+}
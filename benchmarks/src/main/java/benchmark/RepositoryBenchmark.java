@@ -0,0 +1,95 @@
+package benchmark;
+
+import config.RepositoryConfiguration;
+import model.CurrencyRate;
+import repository.CurrencyRepository;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Currency;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of parsing a day file and of the read-modify-write of putExchangeRate.
+ * Run: java -jar benchmarks/target/benchmarks.jar RepositoryBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    private final static LocalDate RATE_DATE = LocalDate.of(2024, 6, 1);
+
+    /** Day file of a given size read by a new repository per call, so the cache is bypassed */
+    @State(Scope.Benchmark)
+    public static class ParseState {
+
+        @Param({"10", "100", "1000", "10000"})
+        public int rows;
+
+        private Path dataStore;
+        private RepositoryConfiguration configuration;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            dataStore = Files.createTempDirectory("currency-jmh");
+            HotPathBenchmarks.writeDayFile(dataStore, RATE_DATE, rows);
+            configuration = new RepositoryConfiguration(dataStore);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            HotPathBenchmarks.deleteDataStore(dataStore);
+        }
+    }
+
+    /** Day file of 30 rows where puts alternate the USD rate, so every put changes the file */
+    @State(Scope.Benchmark)
+    public static class PutState {
+
+        private Path dataStore;
+        private CurrencyRepository repository;
+        private Map<String, CurrencyRate>[] updates;
+        private int next;
+
+        @Setup(Level.Trial)
+        @SuppressWarnings("unchecked")
+        public void setUp() throws IOException {
+            dataStore = Files.createTempDirectory("currency-jmh");
+            HotPathBenchmarks.writeDayFile(dataStore, RATE_DATE, 30);
+            repository = new CurrencyRepository(new RepositoryConfiguration(dataStore));
+
+            Currency usd = Currency.getInstance("USD");
+            updates = new Map[]{
+                    Map.of("USD", new CurrencyRate(usd, new BigDecimal("3.2615"), new BigDecimal("3.2745"))),
+                    Map.of("USD", new CurrencyRate(usd, new BigDecimal("3.2620"), new BigDecimal("3.2750")))
+            };
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            HotPathBenchmarks.deleteDataStore(dataStore);
+        }
+    }
+
+    @Benchmark
+    public void getCurrencyRateMapParse(ParseState state, Blackhole blackhole) {
+        blackhole.consume(new CurrencyRepository(state.configuration).getCurrencyRateMap(RATE_DATE));
+    }
+
+    @Benchmark
+    public void putExchangeRate(PutState state, Blackhole blackhole) {
+        Map<String, CurrencyRate> update = state.updates[state.next ^= 1];
+        state.repository.putExchangeRate(RATE_DATE, update);
+        blackhole.consume(update);
+    }
+}
@@ -1,30 +1,225 @@
 import config.RepositoryConfiguration;
+import config.StorageType;
+import exceptions.ApplicationException;
+import exceptions.IncorrectCommandFormatException;
+import exceptions.InvalidDateFormatException;
 import controller.CurrencyRateConsoleController;
+import controller.CurrencyRateHttpController;
+import controller.CurrencyRateScriptController;
+import controller.OutputFormat;
+import metrics.Metrics;
 import model.LocalCurrency;
+import repository.ColumnarCurrencyRepository;
 import repository.CurrencyRepository;
+import repository.DataStoreConverter;
+import repository.DataStoreFactory;
+import repository.DataStoreRep;
+import repository.InstrumentedDataStoreRep;
 import service.CurrencyRateService;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.Currency;
 import java.util.List;
 
 public class Application {
-    public static void main(String[] args) {
+
+    /** Command that reads other commands from stdin or from a file */
+    private final static String SCRIPT_COMMAND = "script";
+
+    /** Command that starts the HTTP server */
+    private final static String SERVE_COMMAND = "serve";
+
+    /** Port of the HTTP server if it isn't set in arguments */
+    private final static int DEFAULT_SERVER_PORT = 8080;
+
+    /** Command that copies all rates from the other storage type into the configured one */
+    private final static String CONVERT_COMMAND = "convert";
+
+    /** Command that packs the day files of a closed range of dates into one archive segment */
+    private final static String ARCHIVE_COMMAND = "archive";
+
+    /** Number of buffered rates that triggers a flush in write-behind mode */
+    private final static int WRITE_BEHIND_MAX_RATES = 1000;
+
+    /** Time after the first buffered rate that triggers a flush in write-behind mode */
+    private final static long WRITE_BEHIND_DELAY_MILLIS = 200;
+
+    /** Size of the buffer of the command results */
+    private final static int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+    public static void main(String[] args) throws IOException {
         // код поднятия контекста
         Currency envCurrency = Currency.getInstance(System.getenv("LOCAL_CURRENCY_CODE"));
         LocalCurrency localCurrency = new LocalCurrency(envCurrency);
 
         Path pathToDataStore = Path.of(System.getenv("DATA_STORE_PATH"));
-        RepositoryConfiguration configuration = new RepositoryConfiguration(pathToDataStore);
-        CurrencyRepository repository = new CurrencyRepository(configuration);
-        CurrencyRateService service = new CurrencyRateService(repository);
-        CurrencyRateConsoleController controller = new CurrencyRateConsoleController(service, localCurrency);
-
-        if (args.length > 1) {
-            String command = args[0];
-            List<String> arguments = List.of(args).subList(1, args.length);
-            controller.run(command, arguments);
-        } else {
-            controller.run("", List.of());
+        String envStorageType = System.getenv("DATA_STORE_TYPE");
+        StorageType storageType = envStorageType == null ? StorageType.CSV : StorageType.valueOf(envStorageType.toUpperCase());
+
+        boolean fixedPointArithmetic = Boolean.parseBoolean(System.getenv("FIXED_POINT_ARITHMETIC"));
+
+        RepositoryConfiguration configuration = new RepositoryConfiguration(pathToDataStore,
+                RepositoryConfiguration.DEFAULT_CACHE_CAPACITY, storageType, fixedPointArithmetic);
+        DataStoreRep dataStore = DataStoreFactory.create(configuration);
+        DataStoreRep repository = dataStore;
+
+        if (repository instanceof CurrencyRepository csvRepository && Boolean.parseBoolean(System.getenv("WATCH_DATA_STORE")))
+            csvRepository.startWatching();
+
+        if (Boolean.parseBoolean(System.getenv("PRELOAD_HISTORY")))
+            repository = new ColumnarCurrencyRepository(repository);
+
+        boolean metricsSummary = Boolean.parseBoolean(System.getenv("METRICS_SUMMARY"));
+        if (metricsSummary || Boolean.parseBoolean(System.getenv("METRICS_ENABLED"))) {
+            repository = enableMetrics(repository, metricsSummary);
+        }
+
+        if (args.length > 0 && args[0].equals(CONVERT_COMMAND)) {
+            StorageType sourceType = storageType == StorageType.CSV ? StorageType.MAPPED : StorageType.CSV;
+            DataStoreRep source = DataStoreFactory.create(configuration, sourceType);
+            try {
+                int count = DataStoreConverter.convert(source, repository);
+                System.out.println("Перенесено дат: " + count);
+            } finally {
+                close(source);
+                close(dataStore);
+            }
+            return;
+        }
+
+        if (args.length > 0 && args[0].equals(ARCHIVE_COMMAND)) {
+            archive(configuration, List.of(args).subList(1, args.length));
+            return;
+        }
+
+        boolean asOfLookup = Boolean.parseBoolean(System.getenv("AS_OF_LOOKUP"));
+        CurrencyRateService service = Boolean.parseBoolean(System.getenv("WRITE_BEHIND"))
+                ? new CurrencyRateService(repository, asOfLookup, WRITE_BEHIND_MAX_RATES, WRITE_BEHIND_DELAY_MILLIS)
+                : new CurrencyRateService(repository, asOfLookup);
+
+        String envOutputFormat = System.getenv("OUTPUT_FORMAT");
+        OutputFormat outputFormat = envOutputFormat == null ? OutputFormat.TEXT : OutputFormat.valueOf(envOutputFormat.toUpperCase());
+
+        if (args.length > 0 && args[0].equals(SCRIPT_COMMAND)) {
+            try {
+                runScript(service, localCurrency, outputFormat, args.length > 1 ? Path.of(args[1]) : null);
+            } finally {
+                service.close();
+                close(dataStore);
+            }
+            return;
+        }
+
+        if (args.length > 0 && args[0].equals(SERVE_COMMAND)) {
+            CurrencyRateHttpController httpController = new CurrencyRateHttpController(service, localCurrency);
+            httpController.start(args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SERVER_PORT);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                httpController.stop();
+                service.close();
+                close(dataStore);
+            }));
+            return;
+        }
+
+        PrintStream out = newOutputStream();
+        try {
+            CurrencyRateConsoleController controller = new CurrencyRateConsoleController(service, localCurrency, out,
+                    outputFormat);
+
+            if (args.length > 1) {
+                String command = args[0];
+                List<String> arguments = List.of(args).subList(1, args.length);
+                controller.run(command, arguments);
+            } else {
+                controller.run("", List.of());
+            }
+        } finally {
+            out.flush();
+            service.close();
+            close(dataStore);
+        }
+    }
+
+    /**
+     * Packs the day files of the dates from the first to the second argument into an archive segment.
+     * Params: configuration - configuration of the data store, only the CSV storage has day files
+     *         arguments - first and last date of the range
+     */
+    private static void archive(RepositoryConfiguration configuration, List<String> arguments) {
+        try {
+            if (configuration.getStorageType() != StorageType.CSV)
+                throw new IncorrectCommandFormatException("Архивирование доступно только для хранилища CSV");
+            if (arguments.size() != 2)
+                throw new IncorrectCommandFormatException("Неверный формат команды");
+
+            LocalDate from = parseDate(arguments.get(0));
+            LocalDate to = parseDate(arguments.get(1));
+            try (CurrencyRepository repository = new CurrencyRepository(configuration)) {
+                int count = repository.archive(from, to);
+                System.out.println("Заархивировано дат: " + count);
+            }
+        } catch (ApplicationException exception) {
+            System.out.println(exception.getMessage());
+        }
+    }
+
+    /** Closes the data store if it keeps files open: the CSV storage keeps its archive segments and watcher */
+    private static void close(DataStoreRep dataStore) {
+        if (dataStore instanceof CurrencyRepository csvRepository) csvRepository.close();
+    }
+
+    private static LocalDate parseDate(String date) {
+        try {
+            return LocalDate.parse(date);
+        } catch (DateTimeParseException exception) {
+            throw new InvalidDateFormatException("Неверный формат даты");
+        }
+    }
+
+    /** Returns a buffered stream to stdout that is flushed only explicitly, so large tables are written in blocks */
+    private static PrintStream newOutputStream() {
+        return new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), OUTPUT_BUFFER_SIZE),
+                false, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Turns metrics on, registers them as a platform MBean and wraps the data store to time its calls.
+     * Params: repository - data store to instrument
+     *         summaryOnExit - if true, the metrics summary is printed to stderr when the JVM exits
+     */
+    private static DataStoreRep enableMetrics(DataStoreRep repository, boolean summaryOnExit) {
+        Metrics metrics = Metrics.getInstance();
+        metrics.setEnabled(true);
+        metrics.registerMBean();
+
+        if (summaryOnExit)
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.print(metrics.getSummary())));
+
+        return new InstrumentedDataStoreRep(repository);
+    }
+
+    /**
+     * Runs commands from a file or, if the file isn't set, from stdin. All results go to one buffered stream.
+     * Params: outputFormat - format of the results
+     *         scriptPath - path to the file with commands, may be null
+     */
+    private static void runScript(CurrencyRateService service, LocalCurrency localCurrency, OutputFormat outputFormat,
+                                  Path scriptPath) throws IOException {
+        PrintStream out = newOutputStream();
+
+        try (BufferedReader reader = scriptPath == null
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(scriptPath, StandardCharsets.UTF_8)) {
+            CurrencyRateConsoleController controller = new CurrencyRateConsoleController(service, localCurrency, out,
+                    outputFormat);
+            new CurrencyRateScriptController(controller).run(reader);
+        } finally {
+            out.flush();
         }
     }
 }
@@ -0,0 +1,101 @@
+package benchmark;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Objects;
+
+/**
+ * Minimal benchmark harness. Each benchmark runs warmup iterations and then measurement iterations
+ * of a fixed duration. The report shows throughput and the allocation rate of the benchmark thread,
+ * the same numbers as JMH with -prof gc.
+ */
+public class BenchmarkRunner {
+
+    /** Operation of a benchmark, the result is consumed so the JIT can't remove the work */
+    @FunctionalInterface
+    public interface Operation {
+        Object run() throws Exception;
+    }
+
+    private final static int DEFAULT_WARMUP_ITERATIONS = 3;
+    private final static int DEFAULT_MEASUREMENT_ITERATIONS = 5;
+    private final static long DEFAULT_ITERATION_MILLIS = 1000;
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationNanos;
+    private final PrintStream out;
+    private final com.sun.management.ThreadMXBean threadBean;
+
+    /** Consumed results of operations */
+    private volatile int sink;
+
+    public BenchmarkRunner(PrintStream out) {
+        this(DEFAULT_WARMUP_ITERATIONS, DEFAULT_MEASUREMENT_ITERATIONS, DEFAULT_ITERATION_MILLIS, out);
+    }
+
+    public BenchmarkRunner(int warmupIterations, int measurementIterations, long iterationMillis, PrintStream out) {
+        Objects.requireNonNull(out);
+        if (warmupIterations < 0 || measurementIterations <= 0 || iterationMillis <= 0)
+            throw new IllegalArgumentException("Incorrect benchmark parameters.");
+
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationNanos = iterationMillis * 1_000_000;
+        this.out = out;
+        this.threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        this.threadBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    public void printHeader() {
+        out.printf("%-48s %14s %14s %14s%n", "Benchmark", "ops/s", "B/op", "MB/s alloc");
+    }
+
+    /**
+     * Runs the benchmark and prints one line of the report. Returns the throughput in operations per second.
+     * Params: name - name of the benchmark
+     *         operation - measured operation
+     */
+    public double run(String name, Operation operation) throws Exception {
+        for (int i = 0; i < warmupIterations; i++)
+            iteration(operation);
+
+        long operations = 0;
+        long nanos = 0;
+        long bytes = 0;
+        for (int i = 0; i < measurementIterations; i++) {
+            long[] result = iteration(operation);
+            operations += result[0];
+            nanos += result[1];
+            bytes += result[2];
+        }
+
+        double seconds = nanos / 1e9;
+        out.printf("%-48s %14.1f %14.1f %14.1f%n", name, operations / seconds, (double) bytes / operations,
+                bytes / seconds / (1024 * 1024));
+        out.flush();
+
+        return operations / seconds;
+    }
+
+    /** Returns the number of operations, elapsed nanoseconds and allocated bytes of one iteration */
+    private long[] iteration(Operation operation) throws Exception {
+        long threadId = Thread.currentThread().getId();
+        long operations = 0;
+        int localSink = 0;
+
+        long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long deadline = start + iterationNanos;
+        long now;
+        do {
+            Object result = operation.run();
+            localSink += result == null ? 0 : System.identityHashCode(result);
+            operations++;
+        } while ((now = System.nanoTime()) < deadline);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - startBytes;
+
+        sink += localSink;
+        return new long[]{operations, now - start, allocated};
+    }
+}
@@ -0,0 +1,102 @@
+package benchmark;
+
+import config.RepositoryConfiguration;
+import model.LocalCurrency;
+import repository.CurrencyRepository;
+import service.AsyncCurrencyRateService;
+import service.CurrencyRateService;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Sends bursts of concurrent exchange requests for one date whose day file has just been rewritten,
+ * through the blocking service on a thread per request and through the asynchronous service.
+ * Reports the number of times the day file was parsed per burst, which is one for the asynchronous service.
+ * Run: java benchmark.BurstReadStress [requestsPerBurst bursts rows]
+ */
+public class BurstReadStress {
+
+    private final static LocalCurrency LOCAL_CURRENCY = new LocalCurrency(Currency.getInstance("BYN"));
+    private final static LocalDate RATE_DATE = LocalDate.of(2024, 6, 1);
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length == 3 ? Integer.parseInt(args[0]) : 2_000;
+        int bursts = args.length == 3 ? Integer.parseInt(args[1]) : 10;
+        int rows = args.length == 3 ? Integer.parseInt(args[2]) : 150;
+
+        Path dataStore = Files.createTempDirectory("currency-burst");
+        try {
+            HotPathBenchmarks.writeDayFile(dataStore, RATE_DATE, rows);
+            run(dataStore, requests, bursts, rows);
+        } finally {
+            try (Stream<Path> files = Files.list(dataStore)) {
+                for (Path file : files.toList()) Files.delete(file);
+            }
+            Files.delete(dataStore);
+        }
+    }
+
+    private static void run(Path dataStore, int requests, int bursts, int rows) throws Exception {
+        Currency usd = Currency.getInstance("USD");
+        Currency eur = Currency.getInstance("EUR");
+        BigDecimal amount = new BigDecimal("1250.75");
+
+        CurrencyRepository blockingRepository = new CurrencyRepository(new RepositoryConfiguration(dataStore));
+        CurrencyRateService blockingService = new CurrencyRateService(blockingRepository);
+        ExecutorService threads = Executors.newFixedThreadPool(Math.min(requests, 256));
+
+        long start = System.nanoTime();
+        for (int burst = 0; burst < bursts; burst++) {
+            HotPathBenchmarks.writeDayFile(dataStore, RATE_DATE, rows);
+            CountDownLatch ready = new CountDownLatch(1);
+            List<CompletableFuture<BigDecimal>> results = new ArrayList<>(requests);
+            for (int i = 0; i < requests; i++) {
+                results.add(CompletableFuture.supplyAsync(() -> {
+                    awaitUninterruptibly(ready);
+                    return blockingService.exchange(RATE_DATE, amount, usd, eur, LOCAL_CURRENCY);
+                }, threads));
+            }
+            ready.countDown();
+            CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).join();
+        }
+        report("blocking", requests, bursts, blockingRepository.getCacheMisses(), System.nanoTime() - start);
+        threads.shutdown();
+
+        CurrencyRepository asyncRepository = new CurrencyRepository(new RepositoryConfiguration(dataStore));
+        try (AsyncCurrencyRateService asyncService = new AsyncCurrencyRateService(new CurrencyRateService(asyncRepository))) {
+            start = System.nanoTime();
+            for (int burst = 0; burst < bursts; burst++) {
+                HotPathBenchmarks.writeDayFile(dataStore, RATE_DATE, rows);
+                List<CompletableFuture<BigDecimal>> results = new ArrayList<>(requests);
+                for (int i = 0; i < requests; i++)
+                    results.add(asyncService.exchange(RATE_DATE, amount, usd, eur, LOCAL_CURRENCY));
+                CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).join();
+            }
+            report("async single-flight", requests, bursts, asyncRepository.getCacheMisses(), System.nanoTime() - start);
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void report(String name, int requests, int bursts, long parses, long nanos) {
+        System.out.printf("%-20s requests/burst=%d bursts=%d parses/burst=%.1f time=%.0fms%n",
+                name, requests, bursts, (double) parses / bursts, nanos / 1e6);
+    }
+}
@@ -0,0 +1,96 @@
+package benchmark;
+
+import config.RepositoryConfiguration;
+import model.CurrencyRate;
+import repository.CurrencyRepository;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Stress check of concurrent writers. Each thread owns its currencies and writes increasing rates
+ * for them into a shared date and into a date of its own. At the end the last rate of every currency
+ * must be stored, otherwise an update has been lost.
+ * Several processes may run against one data store with different firstCurrency values.
+ * Run: java benchmark.ConcurrentWriteStress [threads writesPerThread dataStorePath firstCurrency]
+ */
+public class ConcurrentWriteStress {
+
+    private final static LocalDate SHARED_DATE = LocalDate.of(2024, 1, 1);
+    private final static int CURRENCIES_PER_THREAD = 2;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int writesPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        Path dataStore = args.length > 2 ? Path.of(args[2]) : Files.createTempDirectory("currency-stress");
+        int firstCurrency = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+
+        List<Currency> currencies = new ArrayList<>(Currency.getAvailableCurrencies());
+        currencies.sort(Comparator.comparing(Currency::getCurrencyCode));
+        if (firstCurrency + threads * CURRENCIES_PER_THREAD > currencies.size())
+            throw new IllegalArgumentException("Not enough currencies for " + threads + " threads.");
+
+        CurrencyRepository repository = new CurrencyRepository(new RepositoryConfiguration(dataStore));
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            List<Currency> owned = currencies.subList(firstCurrency + t * CURRENCIES_PER_THREAD,
+                    firstCurrency + (t + 1) * CURRENCIES_PER_THREAD);
+            LocalDate ownDate = SHARED_DATE.plusDays(1 + firstCurrency + t);
+
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 1; i <= writesPerThread; i++) {
+                        for (Currency currency : owned) {
+                            Map<String, CurrencyRate> update = Map.of(currency.getCurrencyCode(), rate(currency, i));
+                            repository.putExchangeRate(SHARED_DATE, update);
+                            repository.putExchangeRate(ownDate, update);
+                        }
+                    }
+                } catch (Throwable throwable) {
+                    failure.compareAndSet(null, throwable);
+                }
+            });
+            workers[t].start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) worker.join();
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+
+        if (failure.get() != null) throw new IllegalStateException("Writer failed", failure.get());
+
+        int lost = 0;
+        CurrencyRepository reader = new CurrencyRepository(new RepositoryConfiguration(dataStore));
+        for (int t = 0; t < threads; t++) {
+            LocalDate ownDate = SHARED_DATE.plusDays(1 + firstCurrency + t);
+            for (Currency currency : currencies.subList(firstCurrency + t * CURRENCIES_PER_THREAD,
+                    firstCurrency + (t + 1) * CURRENCIES_PER_THREAD)) {
+                BigDecimal expected = rate(currency, writesPerThread).getSellingRate();
+                for (LocalDate date : List.of(SHARED_DATE, ownDate)) {
+                    CurrencyRate stored = reader.getCurrencyRateMap(date).get(currency.getCurrencyCode());
+                    if (stored == null || stored.getSellingRate().compareTo(expected) != 0) lost++;
+                }
+            }
+        }
+
+        long writes = 2L * threads * writesPerThread * CURRENCIES_PER_THREAD;
+        System.out.printf("threads=%d writes=%d time=%.2fs rate=%.0f writes/s lost=%d%n",
+                threads, writes, seconds, writes / seconds, lost);
+        if (lost > 0) System.exit(1);
+    }
+
+    private static CurrencyRate rate(Currency currency, int version) {
+        BigDecimal value = BigDecimal.valueOf(version, 2);
+        return new CurrencyRate(currency, value, value);
+    }
+}
@@ -0,0 +1,134 @@
+package benchmark;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Generates day files in the format written by CurrencyRepository: "CODE, purchaseRate, sellingRate" lines.
+ * Each currency follows its own random walk, so consecutive days have close rates, and the purchase rate
+ * is above the selling rate by a spread of the currency, as in data/exchange_rate and in stores filled by
+ * admin/putExchangeRate. The local currency has no rates, as in those stores. The same seed produces the same files.
+ * Run: java benchmark.DataGenerator dataStorePath [years currencies localCurrency firstDate seed]
+ */
+public class DataGenerator {
+
+    private final static int DEFAULT_YEARS = 10;
+    private final static int DEFAULT_CURRENCIES = 150;
+    private final static String DEFAULT_LOCAL_CURRENCY = "BYN";
+    private final static LocalDate DEFAULT_FIRST_DATE = LocalDate.of(2015, 1, 1);
+    private final static long DEFAULT_SEED = 42;
+
+    /** Digits after the point of generated rates */
+    private final static int RATE_SCALE = 4;
+
+    /** Standard deviation of the daily relative change of a rate */
+    private final static double DAILY_VOLATILITY = 0.005;
+
+    /** Currencies listed first, so they are present in stores of any size */
+    private final static List<String> MAJOR_CURRENCIES = List.of("USD", "EUR", "RUB", "PLN", "CNY", "GBP", "JPY");
+
+    private final List<String> codes;
+    private final double[] midRates;
+    private final double[] spreads;
+    private final Random random;
+
+    /**
+     * Params: currencies - number of currencies of a day file
+     *         localCurrency - currency without rates
+     *         seed - seed of the random walks
+     */
+    public DataGenerator(int currencies, String localCurrency, long seed) {
+        Objects.requireNonNull(localCurrency);
+
+        List<String> available = new ArrayList<>();
+        for (Currency currency : Currency.getAvailableCurrencies()) available.add(currency.getCurrencyCode());
+        Collections.sort(available);
+
+        List<String> ordered = new ArrayList<>(MAJOR_CURRENCIES);
+        for (String code : available) {
+            if (!ordered.contains(code)) ordered.add(code);
+        }
+        ordered.remove(localCurrency);
+
+        if (currencies <= 0 || currencies > ordered.size())
+            throw new IllegalArgumentException("Number of currencies must be from 1 to " + ordered.size() + ".");
+
+        this.codes = List.copyOf(ordered.subList(0, currencies));
+        this.random = new Random(seed);
+        this.midRates = new double[currencies];
+        this.spreads = new double[currencies];
+        for (int i = 0; i < currencies; i++) {
+            midRates[i] = Math.exp(random.nextGaussian() * 2);
+            spreads[i] = 0.002 + random.nextDouble() * 0.02;
+        }
+    }
+
+    /** Returns the codes of the generated currencies */
+    public List<String> getCodes() {
+        return codes;
+    }
+
+    /**
+     * Writes day files of consecutive dates, the random walks continue from the last written day.
+     * Returns the number of written bytes.
+     * Params: dataStore - directory of the data store
+     *         firstDate - date of the first day file
+     *         days - number of day files
+     * Throws: IOException
+     */
+    public long write(Path dataStore, LocalDate firstDate, int days) throws IOException {
+        StringBuilder content = new StringBuilder(codes.size() * 32);
+        long bytes = 0;
+
+        for (int day = 0; day < days; day++) {
+            content.setLength(0);
+            for (int i = 0; i < codes.size(); i++) {
+                midRates[i] *= 1 + random.nextGaussian() * DAILY_VOLATILITY;
+
+                BigDecimal selling = rate(midRates[i] * (1 - spreads[i] / 2));
+                BigDecimal purchase = rate(midRates[i] * (1 + spreads[i] / 2)).max(selling.add(BigDecimal.valueOf(1, RATE_SCALE)));
+                content.append(codes.get(i)).append(", ").append(purchase).append(", ").append(selling).append('\n');
+            }
+
+            byte[] fileBytes = content.toString().getBytes(StandardCharsets.UTF_8);
+            Files.write(dataStore.resolve(firstDate.plusDays(day) + ".csv"), fileBytes);
+            bytes += fileBytes.length;
+        }
+
+        return bytes;
+    }
+
+    /** Returns the rate rounded to the scale of generated rates, not less than the smallest positive rate */
+    private static BigDecimal rate(double value) {
+        BigDecimal rate = BigDecimal.valueOf(value).setScale(RATE_SCALE, RoundingMode.HALF_UP);
+        return rate.signum() > 0 ? rate : BigDecimal.valueOf(1, RATE_SCALE);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Run: java benchmark.DataGenerator dataStorePath [years currencies localCurrency firstDate seed]");
+            return;
+        }
+
+        Path dataStore = Path.of(args[0]);
+        int years = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_YEARS;
+        int currencies = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_CURRENCIES;
+        String localCurrency = args.length > 3 ? args[3] : DEFAULT_LOCAL_CURRENCY;
+        LocalDate firstDate = args.length > 4 ? LocalDate.parse(args[4]) : DEFAULT_FIRST_DATE;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : DEFAULT_SEED;
+
+        Files.createDirectories(dataStore);
+        int days = (int) (firstDate.plusYears(years).toEpochDay() - firstDate.toEpochDay());
+
+        long start = System.nanoTime();
+        long bytes = new DataGenerator(currencies, localCurrency, seed).write(dataStore, firstDate, days);
+        System.out.printf("days=%d currencies=%d size=%.1f MiB time=%.2fs%n", days, currencies,
+                bytes / (1024.0 * 1024.0), (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,190 @@
+package benchmark;
+
+import config.RepositoryConfiguration;
+import config.StorageType;
+import exceptions.CurrencyDataException;
+import model.CurrencyRate;
+import model.LocalCurrency;
+import repository.CurrencyRepository;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Differential check of the fixed-point exchange. Two repositories read the same data store, one with
+ * FIXED_POINT_ARITHMETIC, and their exchange and quote results are compared with BigDecimal.equals,
+ * so scales must match too, against each other and against the BigDecimal formula of the exchange.
+ * Rates and amounts have random scales, operands near Long.MAX_VALUE that overflow the fixed-point path,
+ * values that don't fit into long, and amounts whose quotient is a HALF_UP tie at the 11th digit.
+ * Run: java benchmark.FixedPointDifferential [dates exchangesPerDate seed]
+ */
+public class FixedPointDifferential {
+
+    private final static LocalCurrency LOCAL_CURRENCY = new LocalCurrency(Currency.getInstance("BYN"));
+    private final static LocalDate FIRST_DATE = LocalDate.of(2024, 1, 1);
+    private final static int CURRENCIES_PER_DATE = 12;
+
+    /** Every n-th exchange is also checked with quote */
+    private final static int QUOTE_EVERY = 50;
+
+    /** Mismatches printed in full */
+    private final static int MISMATCHES_PRINTED = 20;
+
+    private final Random random;
+    private final List<Currency> currencies;
+    private long checked;
+    private long mismatches;
+
+    private FixedPointDifferential(long seed) {
+        random = new Random(seed);
+        currencies = new ArrayList<>(Currency.getAvailableCurrencies());
+        currencies.sort(Comparator.comparing(Currency::getCurrencyCode));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int dates = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int exchangesPerDate = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+
+        Path dataStore = Files.createTempDirectory("currency-fixed-point");
+        CurrencyRepository bigDecimal = new CurrencyRepository(
+                new RepositoryConfiguration(dataStore, 64, StorageType.CSV, false));
+        CurrencyRepository fixedPoint = new CurrencyRepository(
+                new RepositoryConfiguration(dataStore, 64, StorageType.CSV, true));
+
+        FixedPointDifferential differential = new FixedPointDifferential(seed);
+        for (int i = 0; i < dates; i++)
+            differential.checkDate(bigDecimal, fixedPoint, FIRST_DATE.plusDays(i), exchangesPerDate);
+
+        System.out.printf("seed=%d checked=%d mismatches=%d%n", seed, differential.checked, differential.mismatches);
+        if (differential.mismatches > 0) System.exit(1);
+    }
+
+    private void checkDate(CurrencyRepository bigDecimal, CurrencyRepository fixedPoint, LocalDate date,
+                           int exchanges) {
+        // the local currency gets rates too, so the exchange from it can be checked
+        Map<String, CurrencyRate> written = new HashMap<>();
+        List<Currency> listed = new ArrayList<>(List.of(LOCAL_CURRENCY.getLocalCurrency()));
+        while (listed.size() < CURRENCIES_PER_DATE) {
+            Currency currency = currencies.get(random.nextInt(currencies.size()));
+            if (!listed.contains(currency)) listed.add(currency);
+        }
+        for (Currency currency : listed)
+            written.put(currency.getCurrencyCode(), new CurrencyRate(currency, positive(), positive()));
+        // each repository knows only the dates written through it
+        bigDecimal.putExchangeRate(date, written);
+        fixedPoint.putExchangeRate(date, written);
+
+        // rates as read back, the text format may change the scale of a written rate
+        Map<String, CurrencyRate> rates = bigDecimal.getCurrencyRateMap(date);
+        // an unlisted currency checks the missing rate error
+        listed.add(currencies.get(random.nextInt(currencies.size())));
+
+        for (int i = 0; i < exchanges; i++) {
+            Currency from = listed.get(random.nextInt(listed.size()));
+            Currency target = listed.get(random.nextInt(listed.size()));
+            BigDecimal amount = random.nextInt(8) == 0 ? tie(from, target, rates) : amount();
+
+            String expected = outcome(() -> exchange(amount, from, target, rates));
+            compare("exchange " + date + " " + amount + " " + from + "->" + target, expected,
+                    outcome(() -> bigDecimal.exchangeCurrency(date, amount, from, target, LOCAL_CURRENCY)),
+                    outcome(() -> fixedPoint.exchangeCurrency(date, amount, from, target, LOCAL_CURRENCY)));
+
+            if (i % QUOTE_EVERY == 0 && rates.containsKey(from.getCurrencyCode())) {
+                Map<Currency, BigDecimal> quotes = fixedPoint.quoteCurrency(date, amount, from, LOCAL_CURRENCY);
+                Map<Currency, BigDecimal> reference = bigDecimal.quoteCurrency(date, amount, from, LOCAL_CURRENCY);
+                for (Map.Entry<Currency, BigDecimal> quote : quotes.entrySet()) {
+                    compare("quote " + date + " " + amount + " " + from + "->" + quote.getKey(),
+                            outcome(() -> exchange(amount, from, quote.getKey(), rates)),
+                            outcome(() -> reference.get(quote.getKey())), outcome(quote::getValue));
+                }
+            }
+        }
+    }
+
+    /** Exchange formula of the data stores written with BigDecimal only */
+    private static BigDecimal exchange(BigDecimal amount, Currency from, Currency target, Map<String, CurrencyRate> rates) {
+        if (amount.compareTo(BigDecimal.ZERO) == 0) return BigDecimal.ZERO;
+        if (from.equals(target)) return amount;
+
+        CurrencyRate fromRate = rates.get(from.getCurrencyCode());
+        CurrencyRate targetRate = rates.get(target.getCurrencyCode());
+        if (fromRate == null || targetRate == null) throw new CurrencyDataException("Данные о курсе валюты отсутствуют");
+
+        if (from.equals(LOCAL_CURRENCY.getLocalCurrency()))
+            return amount.divide(targetRate.getPurchaseRate(), 10, RoundingMode.HALF_UP);
+
+        BigDecimal base = amount.multiply(fromRate.getSellingRate());
+        if (target.equals(LOCAL_CURRENCY.getLocalCurrency())) return base;
+        return base.divide(targetRate.getPurchaseRate(), 10, RoundingMode.HALF_UP);
+    }
+
+    private void compare(String operation, String expected, String bigDecimal, String fixedPoint) {
+        checked++;
+        if (expected.equals(bigDecimal) && expected.equals(fixedPoint)) return;
+
+        if (mismatches++ < MISMATCHES_PRINTED)
+            System.out.printf("MISMATCH %s: expected=%s bigDecimal=%s fixedPoint=%s%n",
+                    operation, expected, bigDecimal, fixedPoint);
+    }
+
+    /** Result with its scale or the class of the exception, so failures are compared too */
+    private static String outcome(ExchangeCall call) {
+        try {
+            BigDecimal result = call.call();
+            return result == null ? "null" : result + "@" + result.scale();
+        } catch (RuntimeException exception) {
+            return exception.getClass().getSimpleName();
+        }
+    }
+
+    /** Random positive rate: realistic, of a random scale near the limits of long, or beyond long */
+    private BigDecimal positive() {
+        return switch (random.nextInt(4)) {
+            case 0 -> BigDecimal.valueOf(1 + random.nextInt(10_000_000), random.nextInt(5));
+            case 1 -> BigDecimal.valueOf(Math.max(1, randomLong(1 + random.nextInt(63))), random.nextInt(30) - 8);
+            case 2 -> BigDecimal.valueOf(Long.MAX_VALUE - random.nextInt(1000), random.nextInt(20));
+            default -> new BigDecimal(new BigInteger(64 + random.nextInt(16), random).setBit(63), random.nextInt(20));
+        };
+    }
+
+    /** Random amount of either sign, zero included */
+    private BigDecimal amount() {
+        BigDecimal amount = switch (random.nextInt(5)) {
+            case 0 -> BigDecimal.valueOf(random.nextInt(1_000_000), random.nextInt(3));
+            case 1 -> BigDecimal.valueOf(randomLong(1 + random.nextInt(63)), random.nextInt(30) - 8);
+            case 2 -> BigDecimal.valueOf(Long.MAX_VALUE - random.nextInt(1000), random.nextInt(12));
+            case 3 -> new BigDecimal(new BigInteger(64 + random.nextInt(16), random), random.nextInt(12));
+            default -> BigDecimal.valueOf(0, random.nextInt(4));
+        };
+        return random.nextBoolean() ? amount.negate() : amount;
+    }
+
+    /**
+     * Amount whose quotient by the purchase rate of the target ends with 5 at the 11th digit,
+     * so the division rounds a tie. Other directions get a random amount.
+     */
+    private BigDecimal tie(Currency from, Currency target, Map<String, CurrencyRate> rates) {
+        CurrencyRate targetRate = rates.get(target.getCurrencyCode());
+        if (!from.equals(LOCAL_CURRENCY.getLocalCurrency()) || targetRate == null) return amount();
+
+        BigDecimal purchase = targetRate.getPurchaseRate();
+        BigInteger quotient = BigInteger.valueOf(random.nextInt(1_000_000)).multiply(BigInteger.TEN).add(BigInteger.valueOf(5));
+        BigDecimal amount = new BigDecimal(quotient.multiply(purchase.unscaledValue()), 11 + purchase.scale());
+        return random.nextBoolean() ? amount.negate() : amount;
+    }
+
+    private long randomLong(int bits) {
+        return random.nextLong() >>> (Long.SIZE - bits);
+    }
+
+    @FunctionalInterface
+    private interface ExchangeCall {
+        BigDecimal call();
+    }
+}
@@ -0,0 +1,120 @@
+package benchmark;
+
+import config.RepositoryConfiguration;
+import controller.CurrencyRateConsoleController;
+import controller.OutputFormat;
+import model.CurrencyRate;
+import model.LocalCurrency;
+import repository.CurrencyRepository;
+import service.CurrencyRateService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks of the repository, service and controller hot paths.
+ * Run: java benchmark.HotPathBenchmarks [warmupIterations measurementIterations iterationMillis]
+ */
+public class HotPathBenchmarks {
+
+    private final static LocalCurrency LOCAL_CURRENCY = new LocalCurrency(Currency.getInstance("BYN"));
+    private final static int[] PARSE_ROW_COUNTS = {10, 100, 1_000, 10_000};
+
+    /** Date of the day file used by exchange, put and listExchangeRates benchmarks */
+    private final static LocalDate RATE_DATE = LocalDate.of(2024, 6, 1);
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkRunner runner = args.length == 3
+                ? new BenchmarkRunner(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Long.parseLong(args[2]), System.out)
+                : new BenchmarkRunner(System.out);
+
+        Path dataStore = Files.createTempDirectory("currency-benchmark");
+        try {
+            run(runner, dataStore);
+        } finally {
+            deleteDataStore(dataStore);
+        }
+    }
+
+    /** Deletes a data store directory created by a benchmark together with its files */
+    static void deleteDataStore(Path dataStore) throws IOException {
+        try (Stream<Path> files = Files.list(dataStore)) {
+            for (Path file : files.toList()) Files.delete(file);
+        }
+        Files.delete(dataStore);
+    }
+
+    private static void run(BenchmarkRunner runner, Path dataStore) throws Exception {
+        RepositoryConfiguration configuration = new RepositoryConfiguration(dataStore);
+        runner.printHeader();
+
+        // A new repository per operation has an empty cache, so every call parses the day file
+        for (int rows : PARSE_ROW_COUNTS) {
+            LocalDate date = RATE_DATE.plusDays(rows);
+            writeDayFile(dataStore, date, rows);
+            runner.run("getCurrencyRateMap.parse rows=" + rows,
+                    () -> new CurrencyRepository(configuration).getCurrencyRateMap(date));
+        }
+
+        writeDayFile(dataStore, RATE_DATE, 30);
+        CurrencyRepository repository = new CurrencyRepository(configuration);
+
+        Map<String, CurrencyRate> update = Map.of("USD",
+                new CurrencyRate(Currency.getInstance("USD"), new BigDecimal("3.2615"), new BigDecimal("3.2745")));
+        runner.run("putExchangeRate rows=30", () -> {
+            repository.putExchangeRate(RATE_DATE, update);
+            return update;
+        });
+
+        BigDecimal amount = new BigDecimal("1250.75");
+        Currency byn = LOCAL_CURRENCY.getLocalCurrency();
+        Currency usd = Currency.getInstance("USD");
+        Currency eur = Currency.getInstance("EUR");
+        runner.run("exchangeCurrency local->foreign",
+                () -> repository.exchangeCurrency(RATE_DATE, amount, byn, usd, LOCAL_CURRENCY));
+        runner.run("exchangeCurrency foreign->local",
+                () -> repository.exchangeCurrency(RATE_DATE, amount, usd, byn, LOCAL_CURRENCY));
+        runner.run("exchangeCurrency foreign->foreign",
+                () -> repository.exchangeCurrency(RATE_DATE, amount, usd, eur, LOCAL_CURRENCY));
+
+        PrintStream nullOut = new PrintStream(OutputStream.nullOutputStream(), false, StandardCharsets.UTF_8);
+        List<String> listArguments = List.of(RATE_DATE.toString());
+        for (OutputFormat format : OutputFormat.values()) {
+            CurrencyRateConsoleController controller = new CurrencyRateConsoleController(
+                    new CurrencyRateService(repository), LOCAL_CURRENCY, nullOut, format);
+            runner.run("controller.listExchangeRates rows=30 " + format.name().toLowerCase(), () -> {
+                controller.run("listExchangeRates", listArguments);
+                return controller;
+            });
+        }
+    }
+
+    /**
+     * Writes a day file in the format of CurrencyRepository. The local currency, USD and EUR are always present,
+     * other rows cycle through the available currencies.
+     */
+    static void writeDayFile(Path dataStore, LocalDate date, int rows) throws IOException {
+        List<String> codes = new ArrayList<>(List.of(LOCAL_CURRENCY.getLocalCurrency().getCurrencyCode(), "USD", "EUR"));
+        for (Currency currency : Currency.getAvailableCurrencies()) {
+            if (!codes.contains(currency.getCurrencyCode())) codes.add(currency.getCurrencyCode());
+        }
+
+        Random random = new Random(rows);
+        List<String> lines = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            BigDecimal purchase = BigDecimal.valueOf(10_000 + random.nextInt(90_000), 4);
+            BigDecimal selling = purchase.add(BigDecimal.valueOf(random.nextInt(500) + 1, 4));
+            lines.add(String.join(", ", codes.get(i % codes.size()), purchase.toString(), selling.toString()));
+        }
+
+        Files.write(dataStore.resolve(date + ".csv"), lines, StandardCharsets.UTF_8);
+    }
+}
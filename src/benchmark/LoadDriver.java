@@ -0,0 +1,220 @@
+package benchmark;
+
+import config.RepositoryConfiguration;
+import controller.CurrencyRateConsoleController;
+import metrics.LatencyHistogram;
+import model.CurrencyRate;
+import model.LocalCurrency;
+import repository.CurrencyRepository;
+import service.CurrencyRateService;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end load test on a growing store. Each phase appends generated day files to the store and replays
+ * a mix of exchange, listExchangeRates and admin/putExchangeRate on random dates of the whole store,
+ * through the console controller or directly through the service. After a warmup the phase reports
+ * the throughput and the p50/p99/p999 latency of each operation.
+ * Run: java benchmark.LoadDriver [phases yearsPerPhase currencies operationsPerPhase threads mix target dataStorePath]
+ *      mix - weights of operations, e.g. exchange=80,list=15,put=5
+ *      target - console or service
+ */
+public class LoadDriver {
+
+    private final static LocalCurrency LOCAL_CURRENCY = new LocalCurrency(Currency.getInstance("BYN"));
+    private final static LocalDate FIRST_DATE = LocalDate.of(2015, 1, 1);
+    private final static long SEED = 42;
+
+    /** Share of operations of a phase run before the measurement */
+    private final static int WARMUP_DIVISOR = 10;
+
+    private enum Operation {
+        EXCHANGE("exchange"), LIST("list"), PUT("put");
+
+        private final String key;
+
+        Operation(String key) {
+            this.key = key;
+        }
+    }
+
+    /** Executes operations of one thread, console controllers aren't shared between threads */
+    private interface Client {
+        void execute(Operation operation, LocalDate date, String from, String to, BigDecimal value);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int phases = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int yearsPerPhase = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int currencies = args.length > 2 ? Integer.parseInt(args[2]) : 150;
+        int operations = args.length > 3 ? Integer.parseInt(args[3]) : 100_000;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        Map<Operation, Integer> mix = parseMix(args.length > 5 ? args[5] : "exchange=80,list=15,put=5");
+        boolean console = !(args.length > 6 && args[6].equals("service"));
+        boolean temporary = args.length <= 7;
+        Path dataStore = temporary ? Files.createTempDirectory("currency-load") : Files.createDirectories(Path.of(args[7]));
+
+        try {
+            run(phases, yearsPerPhase, currencies, operations, threads, mix, console, dataStore);
+        } finally {
+            if (temporary) {
+                try (Stream<Path> files = Files.list(dataStore)) {
+                    for (Path file : files.toList()) Files.delete(file);
+                }
+                Files.delete(dataStore);
+            }
+        }
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.split("=");
+            Operation operation = Arrays.stream(Operation.values()).filter(o -> o.key.equals(parts[0].strip()))
+                    .findFirst().orElseThrow(() -> new IllegalArgumentException("Unknown operation " + parts[0] + "."));
+            weights.put(operation, Integer.parseInt(parts[1].strip()));
+        }
+        if (weights.values().stream().mapToInt(Integer::intValue).sum() <= 0)
+            throw new IllegalArgumentException("Weights of operations must have a positive sum.");
+
+        return weights;
+    }
+
+    private static void run(int phases, int yearsPerPhase, int currencies, int operations, int threads,
+                            Map<Operation, Integer> mix, boolean console, Path dataStore) throws Exception {
+        DataGenerator generator = new DataGenerator(currencies, LOCAL_CURRENCY.getLocalCurrency().getCurrencyCode(), SEED);
+        List<String> codes = generator.getCodes();
+
+        CurrencyRepository repository = new CurrencyRepository(new RepositoryConfiguration(dataStore));
+        CurrencyRateService service = new CurrencyRateService(repository);
+        PrintStream nullOut = new PrintStream(OutputStream.nullOutputStream(), false, StandardCharsets.UTF_8);
+
+        System.out.printf("target=%s threads=%d currencies=%d operations per phase=%d mix=%s%n",
+                console ? "console" : "service", threads, currencies, operations, mix);
+        System.out.printf("%-10s %8s %-10s %10s %12s %10s %10s %10s%n",
+                "Store", "Dates", "Operation", "Count", "ops/s", "p50 us", "p99 us", "p999 us");
+
+        LocalDate nextDate = FIRST_DATE;
+        for (int phase = 1; phase <= phases; phase++) {
+            int days = (int) (nextDate.plusYears(yearsPerPhase).toEpochDay() - nextDate.toEpochDay());
+            generator.write(dataStore, nextDate, days);
+            nextDate = nextDate.plusDays(days);
+            repository.refreshDates();
+
+            int dayCount = (int) (nextDate.toEpochDay() - FIRST_DATE.toEpochDay());
+            Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+            for (Operation operation : Operation.values()) latencies.put(operation, new LatencyHistogram());
+
+            runThreads(threads, operations / WARMUP_DIVISOR, mix, codes, dayCount, service, console, nullOut, null,
+                    phase * 2L);
+            double seconds = runThreads(threads, operations, mix, codes, dayCount, service, console, nullOut,
+                    latencies, phase * 2L + 1);
+
+            String store = (phase * yearsPerPhase) + "y";
+            long total = 0;
+            for (Operation operation : Operation.values()) {
+                LatencyHistogram histogram = latencies.get(operation);
+                if (histogram.getCount() == 0) continue;
+
+                total += histogram.getCount();
+                System.out.printf("%-10s %8d %-10s %10d %12.0f %10.1f %10.1f %10.1f%n", store, dayCount,
+                        operation.key, histogram.getCount(), histogram.getCount() / seconds,
+                        histogram.getPercentileNanos(0.5) / 1e3, histogram.getPercentileNanos(0.99) / 1e3,
+                        histogram.getPercentileNanos(0.999) / 1e3);
+            }
+            System.out.printf("%-10s %8d %-10s %10d %12.0f%n", store, dayCount, "all", total, total / seconds);
+        }
+    }
+
+    /**
+     * Runs the operations on the threads and returns the elapsed seconds.
+     * Params: latencies - histograms of the operations, null for a warmup
+     *         seed - seed of the random choices of the run
+     */
+    private static double runThreads(int threads, int operations, Map<Operation, Integer> mix, List<String> codes,
+                                     int dayCount, CurrencyRateService service, boolean console, PrintStream nullOut,
+                                     Map<Operation, LatencyHistogram> latencies, long seed) throws InterruptedException {
+        Operation[] choices = choices(mix);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(seed * 1_000 + t);
+            Client client = console ? consoleClient(service, nullOut) : serviceClient(service);
+            int count = operations / threads + (t < operations % threads ? 1 : 0);
+
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < count; i++) {
+                        Operation operation = choices[random.nextInt(choices.length)];
+                        LocalDate date = FIRST_DATE.plusDays(random.nextInt(dayCount));
+                        String from = codes.get(random.nextInt(codes.size()));
+                        String to = codes.get(random.nextInt(codes.size()));
+                        BigDecimal value = BigDecimal.valueOf(1 + random.nextInt(1_000_000), 4);
+
+                        long operationStart = System.nanoTime();
+                        client.execute(operation, date, from, to, value);
+                        if (latencies != null) latencies.get(operation).recordSince(operationStart);
+                    }
+                } catch (Throwable throwable) {
+                    failure.compareAndSet(null, throwable);
+                }
+            });
+            workers[t].start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) worker.join();
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+
+        if (failure.get() != null) throw new IllegalStateException("Worker failed", failure.get());
+        return seconds;
+    }
+
+    /** Returns operations repeated by their weights, a uniform choice of an element follows the mix */
+    private static Operation[] choices(Map<Operation, Integer> mix) {
+        List<Operation> choices = new ArrayList<>();
+        for (Map.Entry<Operation, Integer> weight : mix.entrySet())
+            for (int i = 0; i < weight.getValue(); i++) choices.add(weight.getKey());
+
+        return choices.toArray(new Operation[0]);
+    }
+
+    private static Client consoleClient(CurrencyRateService service, PrintStream nullOut) {
+        CurrencyRateConsoleController controller = new CurrencyRateConsoleController(service, LOCAL_CURRENCY, nullOut);
+
+        return (operation, date, from, to, value) -> {
+            switch (operation) {
+                case EXCHANGE -> controller.run("exchange", List.of(date.toString(), value.toString(), from, to));
+                case LIST -> controller.run("listExchangeRates", List.of(date.toString()));
+                case PUT -> controller.run("admin/putExchangeRate",
+                        List.of(date.toString(), from, value.toString(), value.add(BigDecimal.ONE).toString()));
+            }
+        };
+    }
+
+    private static Client serviceClient(CurrencyRateService service) {
+        return (operation, date, from, to, value) -> {
+            switch (operation) {
+                case EXCHANGE -> service.exchange(date, value, Currency.getInstance(from), Currency.getInstance(to),
+                        LOCAL_CURRENCY);
+                case LIST -> service.getMap(date);
+                case PUT -> service.saveExchangeRate(date, Map.of(from,
+                        new CurrencyRate(Currency.getInstance(from), value, value.add(BigDecimal.ONE))));
+            }
+        };
+    }
+}
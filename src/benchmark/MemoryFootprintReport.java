@@ -0,0 +1,83 @@
+package benchmark;
+
+import config.RepositoryConfiguration;
+import model.CurrencyRate;
+import repository.ColumnarCurrencyRepository;
+import repository.CurrencyRepository;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Heap used by the full rate history kept as maps of CurrencyRate objects and kept in ColumnarCurrencyRepository.
+ * The heap is measured after garbage collection, so the numbers are approximate; the size of the columns
+ * is also computed from their lengths.
+ * Run: java benchmark.MemoryFootprintReport [years currencies]
+ */
+public class MemoryFootprintReport {
+
+    private final static LocalDate FIRST_DATE = LocalDate.of(2015, 1, 1);
+
+    /** Cache of one day table, so the source data store adds almost nothing to the measured heap */
+    private final static int SOURCE_CACHE_CAPACITY = 1;
+
+    private final static int GC_ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int years = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int currencies = args.length > 1 ? Integer.parseInt(args[1]) : 150;
+
+        Path dataStore = Files.createTempDirectory("currency-footprint");
+        try {
+            LocalDate lastDate = FIRST_DATE.plusYears(years);
+            for (LocalDate date = FIRST_DATE; date.isBefore(lastDate); date = date.plusDays(1))
+                HotPathBenchmarks.writeDayFile(dataStore, date, currencies);
+
+            report(new RepositoryConfiguration(dataStore, SOURCE_CACHE_CAPACITY));
+        } finally {
+            try (Stream<Path> files = Files.list(dataStore)) {
+                for (Path file : files.toList()) Files.delete(file);
+            }
+            Files.delete(dataStore);
+        }
+    }
+
+    private static void report(RepositoryConfiguration configuration) {
+        CurrencyRepository source = new CurrencyRepository(configuration);
+        int dates = source.getDates().size();
+
+        long before = usedHeap();
+        Map<LocalDate, Map<String, CurrencyRate>> maps = new HashMap<>();
+        for (LocalDate date : source.getDates()) maps.put(date, source.getCurrencyRateMap(date));
+        long mapBytes = usedHeap() - before;
+        long rates = maps.values().stream().mapToLong(Map::size).sum();
+        maps = null;
+
+        before = usedHeap();
+        long start = System.nanoTime();
+        ColumnarCurrencyRepository columnar = new ColumnarCurrencyRepository(source);
+        double loadSeconds = (System.nanoTime() - start) / 1e9;
+        long columnarBytes = usedHeap() - before;
+
+        System.out.printf("dates=%d rates=%d%n", dates, rates);
+        System.out.printf("%-36s %12s %14s%n", "Layout", "Heap, MiB", "Bytes per rate");
+        print("HashMap<String, CurrencyRate> per date", mapBytes, rates);
+        print("ColumnarCurrencyRepository", columnarBytes, rates);
+        print("  columns by array lengths", columnar.getColumnBytes(), rates);
+        System.out.printf("preload=%.2fs overflow rates=%d%n", loadSeconds, columnar.getOverflowCount());
+    }
+
+    private static void print(String layout, long bytes, long rates) {
+        System.out.printf("%-36s %12.1f %14.1f%n", layout, bytes / (1024.0 * 1024.0), (double) bytes / rates);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < GC_ROUNDS; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
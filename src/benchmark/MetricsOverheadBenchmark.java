@@ -0,0 +1,93 @@
+package benchmark;
+
+import config.RepositoryConfiguration;
+import controller.CurrencyRateConsoleController;
+import metrics.Metrics;
+import model.LocalCurrency;
+import repository.CurrencyRepository;
+import repository.InstrumentedDataStoreRep;
+import service.CurrencyRateService;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Currency;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Measures the cost of metrics on the cheapest commands, where it is the largest share of the time.
+ * Each command runs through a plain controller with metrics disabled and through an instrumented one
+ * with metrics enabled, alternating several rounds; the best throughput of each variant is compared.
+ * Run: java benchmark.MetricsOverheadBenchmark [rounds warmupIterations measurementIterations iterationMillis]
+ */
+public class MetricsOverheadBenchmark {
+
+    private final static LocalCurrency LOCAL_CURRENCY = new LocalCurrency(Currency.getInstance("BYN"));
+    private final static LocalDate RATE_DATE = LocalDate.of(2024, 6, 1);
+
+    /** Number of rows in the day file */
+    private final static int ROWS = 30;
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length == 4 ? Integer.parseInt(args[0]) : 3;
+        BenchmarkRunner runner = args.length == 4
+                ? new BenchmarkRunner(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Long.parseLong(args[3]), System.out)
+                : new BenchmarkRunner(System.out);
+
+        Path dataStore = Files.createTempDirectory("currency-metrics-benchmark");
+        try {
+            run(runner, dataStore, rounds);
+        } finally {
+            try (Stream<Path> files = Files.list(dataStore)) {
+                for (Path file : files.toList()) Files.delete(file);
+            }
+            Files.delete(dataStore);
+        }
+    }
+
+    private static void run(BenchmarkRunner runner, Path dataStore, int rounds) throws Exception {
+        HotPathBenchmarks.writeDayFile(dataStore, RATE_DATE, ROWS);
+        CurrencyRepository repository = new CurrencyRepository(new RepositoryConfiguration(dataStore));
+
+        PrintStream nullOut = new PrintStream(OutputStream.nullOutputStream(), false, StandardCharsets.UTF_8);
+        CurrencyRateConsoleController plain = new CurrencyRateConsoleController(
+                new CurrencyRateService(repository), LOCAL_CURRENCY, nullOut);
+        CurrencyRateConsoleController instrumented = new CurrencyRateConsoleController(
+                new CurrencyRateService(new InstrumentedDataStoreRep(repository)), LOCAL_CURRENCY, nullOut);
+
+        List<String> exchangeArguments = List.of(RATE_DATE.toString(), "1250.75", "USD", "EUR");
+        List<String> listArguments = List.of(RATE_DATE.toString());
+
+        runner.printHeader();
+        compare(runner, rounds, "exchange",
+                () -> { plain.run("exchange", exchangeArguments); return plain; },
+                () -> { instrumented.run("exchange", exchangeArguments); return instrumented; });
+        compare(runner, rounds, "listExchangeRates rows=" + ROWS,
+                () -> { plain.run("listExchangeRates", listArguments); return plain; },
+                () -> { instrumented.run("listExchangeRates", listArguments); return instrumented; });
+
+        System.out.println();
+        System.out.print(Metrics.getInstance().getSummary());
+    }
+
+    private static void compare(BenchmarkRunner runner, int rounds, String name,
+                                BenchmarkRunner.Operation plain, BenchmarkRunner.Operation instrumented) throws Exception {
+        double plainBest = 0;
+        double instrumentedBest = 0;
+
+        for (int round = 0; round < rounds; round++) {
+            Metrics.getInstance().setEnabled(false);
+            plainBest = Math.max(plainBest, runner.run(name + " metrics=off", plain));
+
+            Metrics.getInstance().setEnabled(true);
+            instrumentedBest = Math.max(instrumentedBest, runner.run(name + " metrics=on", instrumented));
+        }
+        Metrics.getInstance().setEnabled(false);
+
+        System.out.printf("%-48s %13.2f%%%n", name + " overhead", (plainBest - instrumentedBest) / plainBest * 100);
+    }
+}
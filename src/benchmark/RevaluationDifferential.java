@@ -0,0 +1,164 @@
+package benchmark;
+
+import config.RepositoryConfiguration;
+import config.StorageType;
+import model.CurrencyRate;
+import model.DatedAmount;
+import model.LocalCurrency;
+import repository.*;
+import service.CurrencyRateService;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Differential check of revalue. The totals streamed by the service are compared with BigDecimal.equals
+ * against the sum of the holdings computed from the rates of every date: local amounts as they are,
+ * foreign amounts at their selling rates, dates without a rate of a non-zero foreign holding skipped.
+ * The check runs on the CSV store with BigDecimal and fixed-point arithmetic, on the mapped and columnar stores
+ * and on the write-behind buffer with rates of some dates still pending. Holdings include the local currency,
+ * a zero amount of an unlisted currency and a currency removed from one date.
+ * Run: java benchmark.RevaluationDifferential [days currencies seed]
+ */
+public class RevaluationDifferential {
+
+    private final static LocalCurrency LOCAL_CURRENCY = new LocalCurrency(Currency.getInstance("BYN"));
+    private final static LocalDate FIRST_DATE = LocalDate.of(2020, 1, 1);
+    private final static int HOLDINGS = 20;
+
+    /** Mismatches printed in full */
+    private final static int MISMATCHES_PRINTED = 20;
+
+    public static void main(String[] args) throws Exception {
+        int days = args.length > 0 ? Integer.parseInt(args[0]) : 730;
+        int currencies = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+
+        Path dataStore = Files.createTempDirectory("currency-revaluation");
+        DataGenerator generator = new DataGenerator(currencies, LOCAL_CURRENCY.getLocalCurrency().getCurrencyCode(), seed);
+        generator.write(dataStore, FIRST_DATE, days);
+        LocalDate lastDate = FIRST_DATE.plusDays(days - 1);
+
+        Random random = new Random(seed);
+        List<String> codes = new ArrayList<>(generator.getCodes());
+        Collections.shuffle(codes, random);
+        Map<Currency, BigDecimal> holdings = new HashMap<>();
+        for (String code : codes.subList(0, Math.min(HOLDINGS, codes.size())))
+            holdings.put(Currency.getInstance(code), BigDecimal.valueOf(random.nextInt(1_000_000) - 100_000, random.nextInt(4)));
+        holdings.put(LOCAL_CURRENCY.getLocalCurrency(), new BigDecimal("1250.50"));
+        holdings.put(unlisted(generator.getCodes()), BigDecimal.ZERO);
+
+        CurrencyRepository csv = new CurrencyRepository(new RepositoryConfiguration(dataStore));
+        // a date without the rate of a holding is skipped
+        csv.removeExchangeRate(FIRST_DATE.plusDays(days / 2), codes.get(0));
+
+        MappedCurrencyRepository mapped = new MappedCurrencyRepository(Files.createTempFile("currency-revaluation", ".bin"));
+        DataStoreConverter.convert(csv, mapped);
+
+        CurrencyRateService writeBehind = new CurrencyRateService(new MappedCurrencyRepository(
+                Files.createTempFile("currency-revaluation", ".bin")), false, Integer.MAX_VALUE, Long.MAX_VALUE / 2);
+        for (LocalDate date : csv.getDates()) writeBehind.saveExchangeRate(date, csv.getCurrencyRateMap(date));
+        writeBehind.flush();
+        // pending rates of some dates, valued from the buffer
+        for (int i = 0; i < days; i += 7) {
+            LocalDate date = FIRST_DATE.plusDays(i);
+            Map<String, CurrencyRate> changed = new HashMap<>();
+            for (CurrencyRate rate : csv.getCurrencyRateMap(date).values()) {
+                BigDecimal selling = rate.getSellingRate().add(BigDecimal.valueOf(1, 4));
+                changed.put(rate.getCurrency().getCurrencyCode(), new CurrencyRate(rate.getCurrency(), rate.getPurchaseRate(), selling));
+            }
+            writeBehind.saveExchangeRate(date, changed);
+        }
+
+        Map<String, CurrencyRateService> services = new LinkedHashMap<>();
+        services.put("csv", new CurrencyRateService(csv));
+        services.put("csv fixed-point", new CurrencyRateService(new CurrencyRepository(
+                new RepositoryConfiguration(dataStore, RepositoryConfiguration.DEFAULT_CACHE_CAPACITY, StorageType.CSV, true))));
+        services.put("mapped", new CurrencyRateService(mapped));
+        services.put("columnar", new CurrencyRateService(new ColumnarCurrencyRepository(mapped)));
+        services.put("write-behind", writeBehind);
+
+        long mismatches = 0;
+        for (Map.Entry<String, CurrencyRateService> entry : services.entrySet()) {
+            CurrencyRateService service = entry.getValue();
+            List<DatedAmount> expected = expectedTotals(service, FIRST_DATE, lastDate, holdings);
+
+            long start = System.nanoTime();
+            List<DatedAmount> totals;
+            try (Stream<DatedAmount> stream = service.revalue(FIRST_DATE, lastDate, holdings, LOCAL_CURRENCY)) {
+                totals = stream.toList();
+            }
+            double millis = (System.nanoTime() - start) / 1e6;
+
+            long storeMismatches = compare(entry.getKey(), expected, totals);
+            mismatches += storeMismatches;
+            System.out.printf("store=%s dates=%d valued=%d time=%.0fms mismatches=%d%n",
+                    entry.getKey(), days, totals.size(), millis, storeMismatches);
+        }
+
+        writeBehind.close();
+        if (mismatches > 0) System.exit(1);
+    }
+
+    /** Totals computed from the rates of every stored date of the range */
+    private static List<DatedAmount> expectedTotals(CurrencyRateService service, LocalDate from, LocalDate to,
+                                                    Map<Currency, BigDecimal> holdings) {
+        List<DatedAmount> totals = new ArrayList<>();
+
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            Map<String, CurrencyRate> rates = service.getMap(date);
+            if (rates.isEmpty()) continue;
+
+            BigDecimal total = BigDecimal.ZERO;
+            for (Map.Entry<Currency, BigDecimal> holding : holdings.entrySet()) {
+                if (holding.getValue().signum() == 0) continue;
+                if (holding.getKey().equals(LOCAL_CURRENCY.getLocalCurrency())) {
+                    total = total.add(holding.getValue());
+                    continue;
+                }
+
+                CurrencyRate rate = rates.get(holding.getKey().getCurrencyCode());
+                if (rate == null) {
+                    total = null;
+                    break;
+                }
+                total = total.add(holding.getValue().multiply(rate.getSellingRate()));
+            }
+
+            if (total != null) totals.add(new DatedAmount(date, total));
+        }
+
+        return totals;
+    }
+
+    private static long compare(String store, List<DatedAmount> expected, List<DatedAmount> totals) {
+        long mismatches = Math.abs(expected.size() - totals.size());
+        if (mismatches > 0)
+            System.out.printf("MISMATCH %s: expected %d dates, got %d%n", store, expected.size(), totals.size());
+
+        for (int i = 0; i < Math.min(expected.size(), totals.size()); i++) {
+            DatedAmount want = expected.get(i);
+            DatedAmount got = totals.get(i);
+            if (want.getDate().equals(got.getDate()) && want.getAmount().equals(got.getAmount())) continue;
+
+            if (mismatches++ < MISMATCHES_PRINTED)
+                System.out.printf("MISMATCH %s: expected %s %s, got %s %s%n", store,
+                        want.getDate(), want.getAmount(), got.getDate(), got.getAmount());
+        }
+
+        return mismatches;
+    }
+
+    /** Returns a currency that has no rates in the generated files */
+    private static Currency unlisted(List<String> codes) {
+        for (Currency currency : Currency.getAvailableCurrencies()) {
+            if (!codes.contains(currency.getCurrencyCode()) && !currency.equals(LOCAL_CURRENCY.getLocalCurrency()))
+                return currency;
+        }
+        throw new IllegalStateException("All currencies are generated.");
+    }
+}
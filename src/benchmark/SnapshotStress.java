@@ -0,0 +1,173 @@
+package benchmark;
+
+import config.RepositoryConfiguration;
+import config.StorageType;
+import model.CurrencyRate;
+import model.RateSnapshot;
+import repository.ColumnarCurrencyRepository;
+import repository.CurrencyRepository;
+import repository.MappedCurrencyRepository;
+import service.CurrencyRateService;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Stress check of rate snapshots. A writer saves rates of increasing values to a few dates, all currencies of a save
+ * have the same value, and now and then removes a currency. Readers take snapshots of the dates and count:
+ * snapshots with rates of different saves, snapshots of dates with rates that have no version, versions or values
+ * of a date that go back, one version with different rates, and snapshots whose rates can be changed.
+ * The CSV store runs with a cache of two tables, so dates are evicted and read again while the writer runs.
+ * Run: java benchmark.SnapshotStress [writes readers dates]
+ */
+public class SnapshotStress {
+
+    private final static LocalDate FIRST_DATE = LocalDate.of(2026, 1, 1);
+    private final static List<String> CODES = List.of("USD", "EUR", "RUB", "PLN", "CNY");
+    private final static int CACHE_CAPACITY = 2;
+
+    /** Every this many writes the writer removes a currency instead of saving rates */
+    private final static int REMOVAL_INTERVAL = 7;
+
+    public static void main(String[] args) throws Exception {
+        int writes = args.length > 0 ? Integer.parseInt(args[0]) : 3000;
+        int readers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int days = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        Map<String, CurrencyRateService> services = new LinkedHashMap<>();
+        services.put("csv", new CurrencyRateService(csv()));
+        services.put("mapped", new CurrencyRateService(mapped()));
+        services.put("columnar", new CurrencyRateService(new ColumnarCurrencyRepository(mapped())));
+        services.put("write-behind csv", new CurrencyRateService(csv(), false, 8, 2));
+        services.put("write-behind mapped", new CurrencyRateService(mapped(), false, 8, 2));
+
+        long failures = 0;
+        for (Map.Entry<String, CurrencyRateService> entry : services.entrySet()) {
+            Counters counters = run(entry.getValue(), writes, readers, days);
+            entry.getValue().close();
+
+            failures += counters.failures();
+            System.out.printf("store=%s reads=%d torn=%d unversioned=%d regressions=%d versionMismatches=%d mutable=%d%n",
+                    entry.getKey(), counters.reads.get(), counters.torn.get(), counters.unversioned.get(),
+                    counters.regressions.get(), counters.versionMismatches.get(), counters.mutable.get());
+        }
+
+        if (failures > 0) System.exit(1);
+    }
+
+    private static Counters run(CurrencyRateService service, int writes, int readerCount, int days) throws Exception {
+        List<LocalDate> dates = new ArrayList<>();
+        for (int day = 0; day < days; day++) {
+            dates.add(FIRST_DATE.plusDays(day));
+            service.saveExchangeRate(dates.get(day), rates(1));
+        }
+
+        Counters counters = new Counters();
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+
+        threads.add(new Thread(() -> {
+            try {
+                for (int i = 2; i <= writes; i++) {
+                    LocalDate date = dates.get(i % days);
+                    if (i % REMOVAL_INTERVAL == 0) service.removeExchangeRate(date, CODES.get(i % CODES.size()));
+                    else service.saveExchangeRate(date, rates(i));
+                }
+            } finally {
+                stop.set(true);
+            }
+        }));
+        for (int t = 0; t < readerCount; t++)
+            threads.add(new Thread(() -> read(service, dates, stop, counters)));
+
+        for (Thread thread : threads) {
+            thread.setUncaughtExceptionHandler((ignored, throwable) -> {
+                failure.compareAndSet(null, throwable);
+                stop.set(true);
+            });
+            thread.start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        if (failure.get() != null) throw new IllegalStateException("Worker failed", failure.get());
+        return counters;
+    }
+
+    private static void read(CurrencyRateService service, List<LocalDate> dates, AtomicBoolean stop, Counters counters) {
+        long[] lastVersions = new long[dates.size()];
+        int[] lastValues = new int[dates.size()];
+        Map<Long, Map<String, CurrencyRate>> ratesByVersion = new HashMap<>();
+
+        while (!stop.get()) {
+            for (int i = 0; i < dates.size(); i++) {
+                RateSnapshot snapshot = service.getSnapshot(dates.get(i));
+                counters.reads.incrementAndGet();
+
+                Set<Integer> values = new HashSet<>();
+                for (CurrencyRate rate : snapshot.getRates().values()) values.add(rate.getPurchaseRate().intValue());
+                if (values.size() != 1) {
+                    counters.torn.incrementAndGet();
+                    continue;
+                }
+                if (snapshot.getVersion() == RateSnapshot.UNVERSIONED) {
+                    counters.unversioned.incrementAndGet();
+                    continue;
+                }
+
+                int value = values.iterator().next();
+                long version = snapshot.getVersion();
+                if (version < lastVersions[i] || version > lastVersions[i] && value < lastValues[i])
+                    counters.regressions.incrementAndGet();
+                if (version >= lastVersions[i]) {
+                    lastVersions[i] = version;
+                    lastValues[i] = value;
+                }
+
+                Map<String, CurrencyRate> seen = ratesByVersion.putIfAbsent(version, snapshot.getRates());
+                if (seen != null && !seen.equals(snapshot.getRates())) counters.versionMismatches.incrementAndGet();
+
+                try {
+                    snapshot.getRates().clear();
+                    counters.mutable.incrementAndGet();
+                } catch (UnsupportedOperationException expected) {
+                    // snapshots are shared between readers
+                }
+            }
+        }
+    }
+
+    private static Map<String, CurrencyRate> rates(int value) {
+        Map<String, CurrencyRate> rates = new HashMap<>();
+        BigDecimal rate = BigDecimal.valueOf(value);
+        for (String code : CODES) rates.put(code, new CurrencyRate(Currency.getInstance(code), rate, rate));
+        return rates;
+    }
+
+    private static CurrencyRepository csv() throws Exception {
+        return new CurrencyRepository(new RepositoryConfiguration(Files.createTempDirectory("currency-snapshot"),
+                CACHE_CAPACITY, StorageType.CSV, false));
+    }
+
+    private static MappedCurrencyRepository mapped() throws Exception {
+        return new MappedCurrencyRepository(Files.createTempFile("currency-snapshot", ".bin"));
+    }
+
+    private static final class Counters {
+        private final AtomicLong reads = new AtomicLong();
+        private final AtomicLong torn = new AtomicLong();
+        private final AtomicLong unversioned = new AtomicLong();
+        private final AtomicLong regressions = new AtomicLong();
+        private final AtomicLong versionMismatches = new AtomicLong();
+        private final AtomicLong mutable = new AtomicLong();
+
+        private long failures() {
+            return torn.get() + unversioned.get() + regressions.get() + versionMismatches.get() + mutable.get();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package benchmark;
+
+import config.RepositoryConfiguration;
+import model.CurrencyRate;
+import model.LocalCurrency;
+import repository.CurrencyRepository;
+import repository.WriteBehindDataStoreRep;
+import service.CurrencyRateService;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Stress check of the write-behind buffer in four parts:
+ * a differential of random saves, removals, reads and exchanges against a service without the buffer,
+ * followed by a comparison of the stored rates after close;
+ * readers of a date written by concurrent writers, which must never see a rate go back;
+ * closes of buffers while their background flush runs, after which the shared data store must still accept writes;
+ * the throughput of a feed of updates of one date with and without the buffer.
+ * Run: java benchmark.WriteBehindStress [operations closes seed]
+ */
+public class WriteBehindStress {
+
+    private final static LocalCurrency LOCAL_CURRENCY = new LocalCurrency(Currency.getInstance("BYN"));
+    private final static LocalDate FIRST_DATE = LocalDate.of(2024, 1, 1);
+    private final static List<String> CODES = List.of("USD", "EUR", "RUB", "PLN", "CNY", "GBP", "JPY", "CHF");
+    private final static int DAYS = 10;
+    private final static int CONCURRENT_WRITES = 20_000;
+    private final static int FEED_UPDATES = 20_000;
+
+    public static void main(String[] args) throws Exception {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int closes = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+
+        int mismatches = differential(operations, new Random(seed));
+        int regressions = concurrentReads();
+        int failedCloses = closesDuringFlush(closes);
+        System.out.printf("differential mismatches=%d, read regressions=%d, failed closes=%d%n",
+                mismatches, regressions, failedCloses);
+
+        CurrencyRateService direct = new CurrencyRateService(repository());
+        CurrencyRateService writeBehind = new CurrencyRateService(repository(), false, 1000, 200);
+        System.out.printf("feed of %d updates: direct %.0f ops/s, write-behind %.0f ops/s%n",
+                FEED_UPDATES, feed(direct), feed(writeBehind));
+        writeBehind.close();
+
+        if (mismatches + regressions + failedCloses > 0) System.exit(1);
+    }
+
+    private static int differential(int operations, Random random) throws Exception {
+        Path writeBehindStore = Files.createTempDirectory("currency-write-behind");
+        CurrencyRateService direct = new CurrencyRateService(repository());
+        CurrencyRateService writeBehind = new CurrencyRateService(
+                new CurrencyRepository(new RepositoryConfiguration(writeBehindStore)), false, 50, 20);
+
+        int mismatches = 0;
+        for (int i = 0; i < operations; i++) {
+            LocalDate date = FIRST_DATE.plusDays(random.nextInt(DAYS));
+            Currency currency = Currency.getInstance(CODES.get(random.nextInt(CODES.size())));
+            int operation = random.nextInt(10);
+
+            if (operation < 6) {
+                Map<String, CurrencyRate> update = Map.of(currency.getCurrencyCode(),
+                        rate(currency, BigDecimal.valueOf(1 + random.nextInt(100_000), 3)));
+                direct.saveExchangeRate(date, update);
+                writeBehind.saveExchangeRate(date, update);
+            } else if (operation < 7) {
+                String code = currency.getCurrencyCode();
+                if (direct.removeExchangeRate(date, code) != writeBehind.removeExchangeRate(date, code)) mismatches++;
+            } else if (operation < 9) {
+                Currency target = Currency.getInstance(CODES.get(random.nextInt(CODES.size())));
+                if (!exchange(direct, date, currency, target).equals(exchange(writeBehind, date, currency, target)))
+                    mismatches++;
+            } else {
+                if (!direct.getMap(date).equals(writeBehind.getMap(date))) mismatches++;
+                // lets the background flush run between operations
+                if (random.nextInt(20) == 0) Thread.sleep(25);
+            }
+        }
+        writeBehind.close();
+
+        CurrencyRateService reopened = new CurrencyRateService(
+                new CurrencyRepository(new RepositoryConfiguration(writeBehindStore)));
+        for (int day = 0; day < DAYS; day++) {
+            LocalDate date = FIRST_DATE.plusDays(day);
+            if (direct.getMap(date).equals(reopened.getMap(date))) continue;
+
+            mismatches++;
+            System.out.printf("MISMATCH stored rates of %s%n", date);
+        }
+        return mismatches;
+    }
+
+    /** Result of the exchange or the message of its failure */
+    private static String exchange(CurrencyRateService service, LocalDate date, Currency from, Currency target) {
+        try {
+            return service.exchange(date, BigDecimal.TEN, from, target, LOCAL_CURRENCY).toString();
+        } catch (RuntimeException exception) {
+            return exception.getMessage();
+        }
+    }
+
+    /** Each writer owns a currency and writes increasing rates, each reader follows the rate of one currency */
+    private static int concurrentReads() throws Exception {
+        CurrencyRateService service = new CurrencyRateService(repository(), false, 64, 5);
+        List<String> codes = CODES.subList(0, 4);
+        AtomicInteger regressions = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+
+        for (String code : codes) {
+            Currency currency = Currency.getInstance(code);
+            threads.add(new Thread(() -> {
+                for (int i = 1; i <= CONCURRENT_WRITES; i++)
+                    service.saveExchangeRate(FIRST_DATE, Map.of(code, rate(currency, BigDecimal.valueOf(i))));
+            }));
+            threads.add(new Thread(() -> {
+                int last = 0;
+                for (int i = 0; i < CONCURRENT_WRITES; i++) {
+                    CurrencyRate rate = service.getMap(FIRST_DATE).get(code);
+                    int value = rate == null ? 0 : rate.getPurchaseRate().intValue();
+                    if (value < last) regressions.incrementAndGet();
+                    last = value;
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.setUncaughtExceptionHandler((ignored, throwable) -> failure.compareAndSet(null, throwable));
+            thread.start();
+        }
+        for (Thread thread : threads) thread.join();
+        service.close();
+
+        if (failure.get() != null) throw new IllegalStateException("Worker failed", failure.get());
+        return regressions.get();
+    }
+
+    /**
+     * Closes buffers over one repository while their background flush writes, then writes through the repository.
+     * Returns the number of closes or later writes that failed
+     */
+    private static int closesDuringFlush(int closes) throws Exception {
+        CurrencyRepository repository = repository();
+        Currency currency = Currency.getInstance(CODES.get(0));
+        int failed = 0;
+
+        for (int i = 0; i < closes; i++) {
+            WriteBehindDataStoreRep buffer = new WriteBehindDataStoreRep(repository, Integer.MAX_VALUE, 1);
+            for (int day = 0; day < DAYS; day++)
+                buffer.putExchangeRate(FIRST_DATE.plusDays(day), Map.of(currency.getCurrencyCode(),
+                        rate(currency, BigDecimal.valueOf(i * DAYS + day + 1))));
+            Thread.sleep(1);
+
+            try {
+                buffer.close();
+                repository.putExchangeRate(FIRST_DATE, Map.of(currency.getCurrencyCode(), rate(currency, BigDecimal.ONE)));
+            } catch (RuntimeException exception) {
+                if (failed++ == 0) System.out.printf("FAILED close or write after it: %s%n", exception);
+            }
+        }
+        return failed;
+    }
+
+    private static double feed(CurrencyRateService service) {
+        long start = System.nanoTime();
+        for (int i = 0; i < FEED_UPDATES; i++) {
+            Currency currency = Currency.getInstance(CODES.get(i % CODES.size()));
+            service.saveExchangeRate(FIRST_DATE, Map.of(currency.getCurrencyCode(),
+                    rate(currency, BigDecimal.valueOf(1000 + i, 3))));
+        }
+        service.flush();
+        return FEED_UPDATES / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static CurrencyRepository repository() throws Exception {
+        return new CurrencyRepository(new RepositoryConfiguration(Files.createTempDirectory("currency-write-behind")));
+    }
+
+    private static CurrencyRate rate(Currency currency, BigDecimal purchase) {
+        return new CurrencyRate(currency, purchase, purchase.add(BigDecimal.ONE));
+    }
+}
@@ -5,16 +5,71 @@ import java.util.Objects;
 
 public class RepositoryConfiguration {
 
+    /** Default number of day tables kept in memory */
+    public final static int DEFAULT_CACHE_CAPACITY = 64;
+
+    /** Name of the binary file of the mapped data store */
+    private final static String MAPPED_STORE_FILE_NAME = "rates.bin";
+
     /**The path to currency data*/
     private final Path pathToDataStore;
 
+    /** Maximum number of parsed day tables kept in memory */
+    private final int cacheCapacity;
+
+    /** Format of the data store */
+    private final StorageType storageType;
+
+    /** Exchange on unscaled long values, falling back to BigDecimal on overflow */
+    private final boolean fixedPointArithmetic;
+
     public RepositoryConfiguration(Path pathToDataStore) {
+        this(pathToDataStore, DEFAULT_CACHE_CAPACITY);
+    }
+
+    public RepositoryConfiguration(Path pathToDataStore, int cacheCapacity) {
+        this(pathToDataStore, cacheCapacity, StorageType.CSV);
+    }
+
+    public RepositoryConfiguration(Path pathToDataStore, StorageType storageType) {
+        this(pathToDataStore, DEFAULT_CACHE_CAPACITY, storageType);
+    }
+
+    public RepositoryConfiguration(Path pathToDataStore, int cacheCapacity, StorageType storageType) {
+        this(pathToDataStore, cacheCapacity, storageType, false);
+    }
+
+    public RepositoryConfiguration(Path pathToDataStore, int cacheCapacity, StorageType storageType,
+                                   boolean fixedPointArithmetic) {
         Objects.requireNonNull(pathToDataStore);
+        Objects.requireNonNull(storageType);
+        if (cacheCapacity <= 0)
+            throw new IllegalArgumentException("Cache capacity must be positive.");
 
         this.pathToDataStore = pathToDataStore;
+        this.cacheCapacity = cacheCapacity;
+        this.storageType = storageType;
+        this.fixedPointArithmetic = fixedPointArithmetic;
     }
 
     public Path getPathToDataStore() {
         return pathToDataStore;
     }
+
+    /** Returns the path to the binary file of the mapped data store */
+    public Path getPathToMappedStore() {
+        return pathToDataStore.resolve(MAPPED_STORE_FILE_NAME);
+    }
+
+    public int getCacheCapacity() {
+        return cacheCapacity;
+    }
+
+    public StorageType getStorageType() {
+        return storageType;
+    }
+
+    public boolean isFixedPointArithmetic() {
+        return fixedPointArithmetic;
+    }
 }
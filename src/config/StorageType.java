@@ -0,0 +1,13 @@
+package config;
+
+/**
+ * Format of the data store
+ */
+public enum StorageType {
+
+    /** One CSV file per date */
+    CSV,
+
+    /** One memory-mapped binary file for all dates */
+    MAPPED
+}
@@ -0,0 +1,162 @@
+package controller;
+
+import exceptions.*;
+import model.LocalCurrency;
+
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Currency;
+import java.util.Objects;
+
+/**
+ * Parses the arguments of commands. Each argument is parsed once into its typed value,
+ * an invalid argument throws an ApplicationException with a message for the user.
+ */
+class ArgumentParser {
+
+    /** Format of dates in arguments, years without an era are counted from 1 */
+    private final static DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    /** Length of a date in the yyyy-MM-dd format */
+    private final static int DATE_LENGTH = 10;
+
+    private final LocalCurrency localCurrency;
+
+    ArgumentParser(LocalCurrency localCurrency) {
+        Objects.requireNonNull(localCurrency);
+
+        this.localCurrency = localCurrency;
+    }
+
+    /**
+     * Parses a date in the yyyy-MM-dd format. Dates of four-digit years are parsed without a formatter.
+     * Params: date - The date of the exchange rate that the user entered
+     * Throws: InvalidDateFormatException - if user entered an incorrect date format
+     */
+    LocalDate parseDate(String date) {
+        try {
+            if (date.length() == DATE_LENGTH && date.charAt(4) == '-' && date.charAt(7) == '-') {
+                int year = digits(date, 0, 4);
+                int month = digits(date, 5, 7);
+                int day = digits(date, 8, 10);
+                if (year > 0 && month >= 0 && day >= 0) return LocalDate.of(year, month, day);
+            }
+
+            DATE_FORMAT.parse(date);
+            return LocalDate.parse(date);
+        } catch (DateTimeException exception) {
+            throw new InvalidDateFormatException("Неверный формат даты");
+        }
+    }
+
+    /** Returns the number written by the digits from start (inclusive) to end (exclusive), or -1 if there are other characters */
+    private static int digits(String text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Parses a supported currency
+     * Params: currency - input currency in ISO format
+     * Throws: UnsupportedCurrencyException - if currency is unsupported
+     */
+    Currency parseCurrency(String currency) {
+        return currencyOf(currency, "Неподдерживаемая валюта");
+    }
+
+    /**
+     * Parses a currency whose rate is stored: a supported currency that isn't the local one
+     * Params: currency - input currency in ISO format
+     * Throws: LocalCurrencyException - if input currency is local
+     *         UnsupportedCurrencyException - if currency is unsupported
+     */
+    Currency parseRateCurrency(String currency) {
+        if (currency.equals(localCurrency.getLocalCurrency().getCurrencyCode()))
+            throw new LocalCurrencyException("Местная валюта");
+
+        return parseCurrency(currency);
+    }
+
+    /**
+     * Parses the initial currency of an exchange
+     * Params: fromCurrency - initial currency
+     * Throws: UnsupportedCurrencyException - if initial currency is unsupported
+     */
+    Currency parseSourceCurrency(String fromCurrency) {
+        return currencyOf(fromCurrency, "Неподдерживаемая исходная валюта");
+    }
+
+    /**
+     * Parses the target currency of an exchange
+     * Params: toCurrency - target currency
+     * Throws: UnsupportedCurrencyException - if target currency is unsupported
+     */
+    Currency parseTargetCurrency(String toCurrency) {
+        return currencyOf(toCurrency, "Неподдерживаемая целевая валюта");
+    }
+
+    private static Currency currencyOf(String currency, String message) {
+        try {
+            return Currency.getInstance(currency);
+        } catch (IllegalArgumentException exception) {
+            throw new UnsupportedCurrencyException(message);
+        }
+    }
+
+    /**
+     * Parses a non-negative purchase rate
+     * Params: purchaseRate - input purchase rate
+     * Throws: ParseNumberFormatException - if format of purchase rate is invalid
+     *         ExchangeRateValueException - if purchase rate is negative
+     */
+    BigDecimal parsePurchaseRate(String purchaseRate) {
+        BigDecimal rate = decimalOf(purchaseRate, "Неверный формат курса покупки");
+        if (rate.signum() < 0)
+            throw new ExchangeRateValueException("Неверное значение курса покупки");
+
+        return rate;
+    }
+
+    /**
+     * Parses a non-negative selling rate
+     * Params: sellingRate - input selling rate
+     * Throws: ParseNumberFormatException - if format of selling rate is invalid
+     *         ExchangeRateValueException - if selling rate is negative
+     */
+    BigDecimal parseSellingRate(String sellingRate) {
+        BigDecimal rate = decimalOf(sellingRate, "Неверный формат курса продажи");
+        if (rate.signum() < 0)
+            throw new ExchangeRateValueException("Неверное значение курса продажи");
+
+        return rate;
+    }
+
+    /**
+     * Parses a non-negative amount of an exchange
+     * Params: amount - Initial amount required for the exchange
+     * Throws: ParseNumberFormatException - incorrect amount format
+     *         InputAmountValueException - if amount is negative
+     */
+    BigDecimal parseAmount(String amount) {
+        BigDecimal value = decimalOf(amount, "Неверный формат исходной денежной суммы");
+        if (value.signum() < 0)
+            throw new InputAmountValueException("Неверное значение исходной денежной суммы");
+
+        return value;
+    }
+
+    private static BigDecimal decimalOf(String number, String message) {
+        try {
+            return new BigDecimal(number);
+        } catch (NumberFormatException exception) {
+            throw new ParseNumberFormatException(message);
+        }
+    }
+}
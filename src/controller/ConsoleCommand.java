@@ -0,0 +1,249 @@
+package controller;
+
+import exceptions.IncorrectCommandFormatException;
+import exceptions.UnknownCommandException;
+
+import java.math.BigDecimal;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Currency;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Command of the console controller with typed arguments. A command is parsed and validated once,
+ * then executed, so no argument is parsed twice.
+ */
+sealed interface ConsoleCommand {
+
+    /**
+     * Parses a command and its arguments.
+     * Params: name - name of the command
+     *         arguments - arguments of the command
+     *         parser - parser of the arguments
+     * Throws: UnknownCommandException - if the command doesn't exist
+     *         IncorrectCommandFormatException - if count of arguments don't match the command
+     *         ApplicationException - if an argument is invalid
+     */
+    static ConsoleCommand parse(String name, List<String> arguments, ArgumentParser parser) {
+        return switch (name) {
+            case PutRate.NAME -> PutRate.parse(arguments, parser);
+            case RemoveRate.NAME -> RemoveRate.parse(arguments, parser);
+            case ImportRates.NAME -> ImportRates.parse(arguments);
+            case ListRates.NAME -> ListRates.parse(arguments, parser);
+            case Exchange.NAME -> Exchange.parse(arguments, parser);
+            case History.NAME -> History.parse(arguments, parser);
+            case Quote.NAME -> Quote.parse(arguments, parser);
+            case Revalue.NAME -> Revalue.parse(arguments, parser);
+            default -> throw new UnknownCommandException("Неизвестная команда");
+        };
+    }
+
+    private static void requireArguments(List<String> arguments, int count) {
+        if (arguments.size() != count)
+            throw new IncorrectCommandFormatException("Неверный формат команды");
+    }
+
+    /** admin/putExchangeRate date currency purchaseRate sellingRate */
+    record PutRate(LocalDate date, Currency currency, BigDecimal purchaseRate, BigDecimal sellingRate)
+            implements ConsoleCommand {
+
+        final static String NAME = "admin/putExchangeRate";
+
+        /** Number of arguments */
+        private final static int ARGUMENTS = 4;
+
+        public PutRate {
+            Objects.requireNonNull(date);
+            Objects.requireNonNull(currency);
+            Objects.requireNonNull(purchaseRate);
+            Objects.requireNonNull(sellingRate);
+        }
+
+        static PutRate parse(List<String> arguments, ArgumentParser parser) {
+            requireArguments(arguments, ARGUMENTS);
+
+            LocalDate date = parser.parseDate(arguments.get(0));
+            Currency currency = parser.parseRateCurrency(arguments.get(1));
+            BigDecimal purchaseRate = parser.parsePurchaseRate(arguments.get(2));
+            BigDecimal sellingRate = parser.parseSellingRate(arguments.get(3));
+
+            return new PutRate(date, currency, purchaseRate, sellingRate);
+        }
+    }
+
+    /** admin/removeExchangeRate date currency */
+    record RemoveRate(LocalDate date, Currency currency) implements ConsoleCommand {
+
+        final static String NAME = "admin/removeExchangeRate";
+
+        /** Number of arguments */
+        private final static int ARGUMENTS = 2;
+
+        public RemoveRate {
+            Objects.requireNonNull(date);
+            Objects.requireNonNull(currency);
+        }
+
+        static RemoveRate parse(List<String> arguments, ArgumentParser parser) {
+            requireArguments(arguments, ARGUMENTS);
+
+            LocalDate date = parser.parseDate(arguments.get(0));
+            return new RemoveRate(date, parser.parseRateCurrency(arguments.get(1)));
+        }
+    }
+
+    /** admin/importExchangeRates file */
+    record ImportRates(Path file) implements ConsoleCommand {
+
+        final static String NAME = "admin/importExchangeRates";
+
+        /** Number of arguments */
+        private final static int ARGUMENTS = 1;
+
+        public ImportRates {
+            Objects.requireNonNull(file);
+        }
+
+        static ImportRates parse(List<String> arguments) {
+            requireArguments(arguments, ARGUMENTS);
+
+            try {
+                return new ImportRates(Path.of(arguments.get(0)));
+            } catch (InvalidPathException exception) {
+                throw new IncorrectCommandFormatException("Неверный путь к файлу");
+            }
+        }
+    }
+
+    /** listExchangeRates date */
+    record ListRates(LocalDate date) implements ConsoleCommand {
+
+        final static String NAME = "listExchangeRates";
+
+        /** Number of arguments */
+        private final static int ARGUMENTS = 1;
+
+        public ListRates {
+            Objects.requireNonNull(date);
+        }
+
+        static ListRates parse(List<String> arguments, ArgumentParser parser) {
+            requireArguments(arguments, ARGUMENTS);
+
+            return new ListRates(parser.parseDate(arguments.get(0)));
+        }
+    }
+
+    /** exchange date amount fromCurrency toCurrency */
+    record Exchange(LocalDate date, BigDecimal amount, Currency fromCurrency, Currency toCurrency)
+            implements ConsoleCommand {
+
+        final static String NAME = "exchange";
+
+        /** Number of arguments */
+        private final static int ARGUMENTS = 4;
+
+        public Exchange {
+            Objects.requireNonNull(date);
+            Objects.requireNonNull(amount);
+            Objects.requireNonNull(fromCurrency);
+            Objects.requireNonNull(toCurrency);
+        }
+
+        static Exchange parse(List<String> arguments, ArgumentParser parser) {
+            requireArguments(arguments, ARGUMENTS);
+
+            LocalDate date = parser.parseDate(arguments.get(0));
+            BigDecimal amount = parser.parseAmount(arguments.get(1));
+            Currency fromCurrency = parser.parseSourceCurrency(arguments.get(2));
+            Currency toCurrency = parser.parseTargetCurrency(arguments.get(3));
+
+            return new Exchange(date, amount, fromCurrency, toCurrency);
+        }
+    }
+
+    /** quote date amount fromCurrency */
+    record Quote(LocalDate date, BigDecimal amount, Currency fromCurrency) implements ConsoleCommand {
+
+        final static String NAME = "quote";
+
+        /** Number of arguments */
+        private final static int ARGUMENTS = 3;
+
+        public Quote {
+            Objects.requireNonNull(date);
+            Objects.requireNonNull(amount);
+            Objects.requireNonNull(fromCurrency);
+        }
+
+        static Quote parse(List<String> arguments, ArgumentParser parser) {
+            requireArguments(arguments, ARGUMENTS);
+
+            LocalDate date = parser.parseDate(arguments.get(0));
+            BigDecimal amount = parser.parseAmount(arguments.get(1));
+            return new Quote(date, amount, parser.parseSourceCurrency(arguments.get(2)));
+        }
+    }
+
+    /** history from to currency */
+    record History(LocalDate from, LocalDate to, Currency currency) implements ConsoleCommand {
+
+        final static String NAME = "history";
+
+        /** Number of arguments */
+        private final static int ARGUMENTS = 3;
+
+        public History {
+            Objects.requireNonNull(from);
+            Objects.requireNonNull(to);
+            Objects.requireNonNull(currency);
+        }
+
+        static History parse(List<String> arguments, ArgumentParser parser) {
+            requireArguments(arguments, ARGUMENTS);
+
+            LocalDate from = parser.parseDate(arguments.get(0));
+            LocalDate to = parser.parseDate(arguments.get(1));
+            Currency currency = parser.parseCurrency(arguments.get(2));
+            if (from.isAfter(to))
+                throw new IncorrectCommandFormatException("Неверный диапазон дат");
+
+            return new History(from, to, currency);
+        }
+    }
+
+    /** revalue holdingsFile from to */
+    record Revalue(Path holdingsFile, LocalDate from, LocalDate to) implements ConsoleCommand {
+
+        final static String NAME = "revalue";
+
+        /** Number of arguments */
+        private final static int ARGUMENTS = 3;
+
+        public Revalue {
+            Objects.requireNonNull(holdingsFile);
+            Objects.requireNonNull(from);
+            Objects.requireNonNull(to);
+        }
+
+        static Revalue parse(List<String> arguments, ArgumentParser parser) {
+            requireArguments(arguments, ARGUMENTS);
+
+            Path holdingsFile;
+            try {
+                holdingsFile = Path.of(arguments.get(0));
+            } catch (InvalidPathException exception) {
+                throw new IncorrectCommandFormatException("Неверный путь к файлу");
+            }
+
+            LocalDate from = parser.parseDate(arguments.get(1));
+            LocalDate to = parser.parseDate(arguments.get(2));
+            if (from.isAfter(to))
+                throw new IncorrectCommandFormatException("Неверный диапазон дат");
+
+            return new Revalue(holdingsFile, from, to);
+        }
+    }
+}
@@ -1,287 +1,312 @@
 package controller;
 
 import exceptions.*;
-import exceptions.ParseNumberFormatException;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
 import model.CurrencyRate;
+import model.DatedAmount;
+import model.DatedCurrencyRate;
 import model.LocalCurrency;
 import service.CurrencyRateService;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 public class CurrencyRateConsoleController implements CurrencyRateController {
 
-    /** Maximum number of arguments in the putExchangeRate command */
-    private final static int PUT_RATE_MAX_ARGUMENTS = 4;
+    /** Number of fields in a row of the import file: date, currency, purchase, selling */
+    private final static int IMPORT_ROW_FIELDS = 4;
 
-    /** Maximum number of arguments in the removeExchangeRate command */
-    private final static int REMOVE_RATE_MAX_ARGUMENTS = 2;
+    /** Number of fields in a row of the holdings file: currency, amount */
+    private final static int HOLDINGS_ROW_FIELDS = 2;
 
-    /** Maximum number of arguments in the listExchangeRates command */
-    private final static int GET_LIST_MAX_ARGUMENTS = 1;
+    /** Separator of fields in a row of the import and holdings files */
+    private final static Pattern FIELD_SEPARATOR = Pattern.compile("\\s*,\\s*");
+
+    /** Timers of the commands by command name, named "command.<name>" */
+    private final static Map<String, LatencyHistogram> COMMAND_TIMERS = Map.of(
+            ConsoleCommand.PutRate.NAME, Metrics.timer("command.putExchangeRate"),
+            ConsoleCommand.RemoveRate.NAME, Metrics.timer("command.removeExchangeRate"),
+            ConsoleCommand.ImportRates.NAME, Metrics.timer("command.importExchangeRates"),
+            ConsoleCommand.ListRates.NAME, Metrics.timer("command.listExchangeRates"),
+            ConsoleCommand.Exchange.NAME, Metrics.timer("command.exchange"),
+            ConsoleCommand.History.NAME, Metrics.timer("command.history"),
+            ConsoleCommand.Quote.NAME, Metrics.timer("command.quote"),
+            ConsoleCommand.Revalue.NAME, Metrics.timer("command.revalue")
+    );
+
+    /** Timer of the commands that aren't known, so arbitrary input doesn't create timers */
+    private final static LatencyHistogram UNKNOWN_COMMAND_TIMER = Metrics.timer("command.unknown");
 
-    /** Maximum number of arguments in the exchange command */
-    private final static int EXCHANGE_MAX_ARGUMENTS = 4;
     private final CurrencyRateService service;
     private final LocalCurrency localCurrency;
 
+    /** Writer of the results of commands in the selected format */
+    private final ResultWriter writer;
+
+    private final ArgumentParser parser;
+
+    /** If the current command has begun a streamed table and not finished it, so an error must abort the table */
+    private boolean tableOpen;
+
     public CurrencyRateConsoleController(CurrencyRateService service, LocalCurrency localCurrency) {
+        this(service, localCurrency, System.out);
+    }
+
+    public CurrencyRateConsoleController(CurrencyRateService service, LocalCurrency localCurrency, PrintStream out) {
+        this(service, localCurrency, out, OutputFormat.TEXT);
+    }
+
+    /**
+     * Params: service - service of rates
+     *         localCurrency - basic currency
+     *         out - stream for the results of commands, should be buffered for large tables
+     *         format - format of the results
+     */
+    public CurrencyRateConsoleController(CurrencyRateService service, LocalCurrency localCurrency, PrintStream out,
+                                         OutputFormat format) {
         Objects.requireNonNull(service);
         Objects.requireNonNull(localCurrency);
+        Objects.requireNonNull(out);
+        Objects.requireNonNull(format);
 
         this.service = service;
         this.localCurrency = localCurrency;
+        this.writer = ResultWriter.of(format, out, System.err);
+        this.parser = new ArgumentParser(localCurrency);
     }
 
     @Override
     public void run(String command, List<String> argumentsList) {
+        boolean timed = Metrics.enabled();
+        long start = timed ? System.nanoTime() : 0;
+
         try {
-            switch (command) {
-                case "admin/putExchangeRate" -> putRate(argumentsList);
-                case "admin/removeExchangeRate" -> removeRate(argumentsList);
-                case "listExchangeRates" -> getListExchangeRate(argumentsList);
-                case "exchange" -> getExchangeRate(argumentsList);
-                default -> throw new UnknownCommandException("Неизвестная команда");
-            }
+            execute(ConsoleCommand.parse(command, argumentsList, parser));
         } catch (ApplicationException ex) {
-            System.out.println(ex.getMessage());
+            Metrics.recordError(ex);
+            reportError(ex.getMessage());
         } catch (Exception exception) {
-            System.out.println("Неизвестная ошибка");
+            Metrics.recordError(exception);
+            reportError("Неизвестная ошибка");
+        } finally {
+            tableOpen = false;
+            if (timed) COMMAND_TIMERS.getOrDefault(command, UNKNOWN_COMMAND_TIMER).recordSince(start);
         }
     }
 
-    /**
-     * Gets a list of arguments and creates a CurrencyRate model. Then add it's to a file with a specific date.
-     * Params: argumentsList - list of arguments from a specific command
-     * Throws: IncorrectCommandFormatException - if count of arguments don't match a specific command
-     */
-    private void putRate(List<String> argumentsList) {
-        if (argumentsList.size() != PUT_RATE_MAX_ARGUMENTS)
-            throw new IncorrectCommandFormatException("Неверный формат команды");
-
-        if (isDateFormatValid(argumentsList.get(0)) && isLocalCurrency(argumentsList.get(1)) &&
-                isCurrencyValid(argumentsList.get(1)) && isPurchaseRateValid(argumentsList.get(2)) &&
-                isSellingRateValid(argumentsList.get(3))) {
-
-            CurrencyRate currencyRate = new CurrencyRate(
-                    Currency.getInstance(argumentsList.get(1)),
-                    new BigDecimal(argumentsList.get(3)),
-                    new BigDecimal(argumentsList.get(2))
-            );
-
-            Map<String, CurrencyRate> currencyMap = new HashMap<>();
-            currencyMap.put(String.valueOf(Currency.getInstance(argumentsList.get(1))), currencyRate);
-
-            service.saveExchangeRate(
-                    LocalDate.parse(argumentsList.get(0)),
-                    currencyMap
-            );
-
-            System.out.println("Запись сохранена");
-        }
+    /** Writes the error of a command, finishing the streamed table it interrupted */
+    private void reportError(String message) {
+        if (tableOpen) writer.abort(message);
+        else writer.error(message);
     }
 
-    /**
-     * Gets a list of arguments and remove currency from file if it's exists.
-     * Params: argumentsList - list of arguments from a specific command
-     * Throws: IncorrectCommandFormatException - if count of arguments don't match a specific command
-     */
-    private void removeRate(List<String> argumentsList) {
-        if (argumentsList.size() != REMOVE_RATE_MAX_ARGUMENTS)
-            throw new IncorrectCommandFormatException("Неверный формат команды");
-
-        if (isDateFormatValid(argumentsList.get(0)) && isLocalCurrency(argumentsList.get(1)) &&
-                isCurrencyValid(argumentsList.get(1))) {
-
-            if (service.removeExchangeRate(LocalDate.parse(argumentsList.get(0)), argumentsList.get(1)))
-                System.out.println("Успешное удаление");
-            else System.out.println("Записи не существует");
-        }
+    /** Executes a parsed command */
+    private void execute(ConsoleCommand command) {
+        if (command instanceof ConsoleCommand.PutRate putRate) putRate(putRate);
+        else if (command instanceof ConsoleCommand.RemoveRate removeRate) removeRate(removeRate);
+        else if (command instanceof ConsoleCommand.ImportRates importRates) importRates(importRates);
+        else if (command instanceof ConsoleCommand.ListRates listRates) getListExchangeRate(listRates);
+        else if (command instanceof ConsoleCommand.Exchange exchange) getExchangeRate(exchange);
+        else if (command instanceof ConsoleCommand.History history) getHistory(history);
+        else if (command instanceof ConsoleCommand.Quote quote) getQuote(quote);
+        else if (command instanceof ConsoleCommand.Revalue revalue) revalue(revalue);
     }
 
     /**
-     * Gets a list of currency rates from a file and outputs it.
-     * Params: argumentsList - list of arguments from a specific command
-     * Throws: IncorrectCommandFormatException - if count of arguments don't match a specific command
+     * Creates a CurrencyRate model and adds it to a file with a specific date.
+     * Params: command - parsed putExchangeRate command
      */
-    private void getListExchangeRate(List<String> argumentsList) {
-        if (argumentsList.size() != GET_LIST_MAX_ARGUMENTS)
-            throw new IncorrectCommandFormatException("Неверный формат команды");
+    private void putRate(ConsoleCommand.PutRate command) {
+        CurrencyRate currencyRate = new CurrencyRate(
+                command.currency(),
+                command.sellingRate(),
+                command.purchaseRate()
+        );
 
-        if (isDateFormatValid(argumentsList.get(0))) {
-            Map<String, CurrencyRate> exchangeRateMap = service.getMap(LocalDate.parse(argumentsList.get(0)));
+        Map<String, CurrencyRate> currencyMap = new HashMap<>();
+        currencyMap.put(command.currency().getCurrencyCode(), currencyRate);
 
-            if (exchangeRateMap.size() == 0)
-                System.out.println("Данные отсутствуют");
-            else printRates(exchangeRateMap);
-        }
-    }
+        service.saveExchangeRate(command.date(), currencyMap);
 
-    /**
-     * Gets list of arguments, checks and performs the exchange
-     * Params: argumentsList - list of arguments from a specific command
-     * Throws: IncorrectCommandFormatException - if count of arguments don't match a specific command
-     */
-    private void getExchangeRate(List<String> argumentsList) {
-        if (argumentsList.size() != EXCHANGE_MAX_ARGUMENTS)
-            throw new IncorrectCommandFormatException("Неверный формат команды");
-
-        if (isDateFormatValid(argumentsList.get(0)) && isSourceAmountFormatCorrect(argumentsList.get(1)) &&
-                isInitialAmountValueCorrect(argumentsList.get(1)) &&
-                isInitialCurrencyUnsupported(argumentsList.get(2), argumentsList.get(3))
-        ) {
-            BigDecimal amount = new BigDecimal(String.valueOf(argumentsList.get(1)));
-            Currency fromCurrency = Currency.getInstance(argumentsList.get((2)));
-            Currency toCurrency = Currency.getInstance(argumentsList.get((3)));
-
-            BigDecimal result = service.exchange(LocalDate.parse(argumentsList.get(0)), amount, fromCurrency,
-                    toCurrency, localCurrency);
-
-            System.out.println(result);
-        }
+        writer.message("Запись сохранена");
     }
 
     /**
-     * The method checks date and return true, if the date is correct.
-     * Params: date - The date of the exchange rate that the user entered
-     * Throws: InvalidDateFormatException - if user entered an incorrect date format
+     * Reads a file with rows "date, currency, purchase, selling", checks each row like putExchangeRate
+     * and saves rates grouped by date with the mapping of putExchangeRate. Invalid rows are reported and skipped.
+     * Params: command - parsed importExchangeRates command
+     * Throws: IncorrectCommandFormatException - if the file can't be read
      */
-    private boolean isDateFormatValid(String date) {
-        try {
-            LocalDate.parse(date, DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-            return true;
-        } catch (Exception exception) {
-            throw new InvalidDateFormatException("Неверный формат даты");
+    private void importRates(ConsoleCommand.ImportRates command) {
+        if (!Files.isReadable(command.file()))
+            throw new IncorrectCommandFormatException("Файл не найден");
+
+        Map<LocalDate, Map<String, CurrencyRate>> ratesByDate = new HashMap<>();
+        int rowNumber = 0;
+        int importedRows = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(command.file(), StandardCharsets.UTF_8)) {
+            String row;
+            while ((row = reader.readLine()) != null) {
+                rowNumber++;
+                if (row.isBlank()) continue;
+
+                try {
+                    String[] fields = FIELD_SEPARATOR.split(row.strip());
+                    if (fields.length != IMPORT_ROW_FIELDS)
+                        throw new IncorrectCommandFormatException("Неверный формат строки");
+
+                    LocalDate date = parser.parseDate(fields[0]);
+                    Currency currency = parser.parseRateCurrency(fields[1]);
+                    BigDecimal purchaseRate = parser.parsePurchaseRate(fields[2]);
+                    BigDecimal sellingRate = parser.parseSellingRate(fields[3]);
+
+                    // the same mapping as putExchangeRate, so an imported row is stored like a put of it
+                    CurrencyRate currencyRate = new CurrencyRate(currency, sellingRate, purchaseRate);
+                    ratesByDate.computeIfAbsent(date, ignored -> new HashMap<>())
+                            .put(currency.getCurrencyCode(), currencyRate);
+                    importedRows++;
+                } catch (ApplicationException exception) {
+                    Metrics.recordError(exception);
+                    writer.error("Строка " + rowNumber + ": " + exception.getMessage());
+                } catch (IllegalArgumentException exception) {
+                    writer.error("Строка " + rowNumber + ": Неверное значение курса");
+                }
+            }
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
         }
-    }
 
-    /**
-     * Checks that currency is supported
-     * Params: currency - input currency in ISO format
-     * Throws: UnsupportedCurrencyException - if currency is unsupported
-     */
-    private boolean isCurrencyValid(String currency) {
-        try {
-            Currency.getInstance(currency);
-            return true;
-        } catch (Exception exception) {
-            throw new UnsupportedCurrencyException("Неподдерживаемая валюта");
-        }
+        Map<LocalDate, String> failures = service.saveExchangeRates(ratesByDate);
+        for (Map.Entry<LocalDate, String> failure : new TreeMap<>(failures).entrySet())
+            writer.error("Дата " + failure.getKey() + ": " + failure.getValue());
+
+        writer.message("Импортировано записей: " + importedRows + ", дат: " + (ratesByDate.size() - failures.size()));
     }
 
     /**
-     * Checks that input currency isn't local currency
-     * Params: currency - input currency in ISO format
-     * Throws: LocalCurrencyException - if input currency is local
+     * Removes currency from file if it's exists.
+     * Params: command - parsed removeExchangeRate command
      */
-    private boolean isLocalCurrency(String currency) {
-        if (currency.equals(localCurrency.getLocalCurrency().getCurrencyCode()))
-            throw new LocalCurrencyException("Местная валюта");
-
-        return true;
+    private void removeRate(ConsoleCommand.RemoveRate command) {
+        if (service.removeExchangeRate(command.date(), command.currency().getCurrencyCode()))
+            writer.message("Успешное удаление");
+        else writer.message("Записи не существует");
     }
 
     /**
-     * Method checks that input purchase rate is valid
-     * Params: purchaseRate - input purchase rate
-     * Throws: ParseNumberFormatException - if format of purchase rate is invalid
-     *         ExchangeRateValueException - if purchase rate is negative
+     * Gets a list of currency rates from a file and outputs it.
+     * Params: command - parsed listExchangeRates command
      */
-    private boolean isPurchaseRateValid(String purchaseRate) {
-        try {
-            Double.parseDouble(purchaseRate);
-        } catch (Exception exception) {
-            throw new ParseNumberFormatException("Неверный формат курса покупки");
-        }
-
-        if (BigDecimal.valueOf(Double.parseDouble(purchaseRate)).compareTo(BigDecimal.ZERO) < 0)
-            throw new ExchangeRateValueException("Неверное значение курса покупки");
+    private void getListExchangeRate(ConsoleCommand.ListRates command) {
+        Map<String, CurrencyRate> exchangeRateMap = service.getMap(command.date());
 
-        return true;
+        writer.beginRates(command.date());
+        for (CurrencyRate rate : exchangeRateMap.values())
+            writer.rate(rate);
+        writer.endRates();
     }
 
     /**
-     * Method checks that input selling rate is valid
-     * Params: sellingRate - input purchase rate
-     * Throws: ParseNumberFormatException - if format of selling rate is invalid
-     *         ExchangeRateValueException - if selling rate is negative
+     * Outputs rates of a currency for every stored date of a range, row by row.
+     * Params: command - parsed history command
      */
-    private boolean isSellingRateValid(String sellingRate) {
-        try {
-            Double.parseDouble(sellingRate);
-        } catch (Exception exception) {
-            throw new ParseNumberFormatException("Неверный формат курса продажи");
+    private void getHistory(ConsoleCommand.History command) {
+        try (Stream<DatedCurrencyRate> rates = service.getHistory(command.from(), command.to(), command.currency())) {
+            writer.beginHistory(command.currency());
+            tableOpen = true;
+            rates.forEachOrdered(writer::historyRow);
+            tableOpen = false;
+            writer.endHistory();
         }
-
-        if (BigDecimal.valueOf(Double.parseDouble(sellingRate)).compareTo(BigDecimal.ZERO) < 0)
-            throw new ExchangeRateValueException("Неверное значение курса продажи");
-
-        return true;
     }
 
     /**
-     * Outputs all exchange rates to console
-     * Params: currencyRateList - list of exchange rates from file with specific date
+     * Performs the exchange and outputs the result
+     * Params: command - parsed exchange command
      */
-    private void printRates(Map<String, CurrencyRate> currencyRateMap) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(String.format("%-10s %-10s %s\n", "Валюта", "Покупка", "Продажа"));
-
-        for (Map.Entry<String, CurrencyRate> entry : currencyRateMap.entrySet()) {
-            sb.append(String.format("%-10s %-10.3s %.3s\n", entry.getValue().getCurrency(), entry.getValue().getPurchaseRate(),
-                             entry.getValue().getSellingRate()));
-        }
+    private void getExchangeRate(ConsoleCommand.Exchange command) {
+        BigDecimal result = service.exchange(command.date(), command.amount(), command.fromCurrency(),
+                command.toCurrency(), localCurrency);
 
-        System.out.println(sb);
+        writer.exchangeResult(command.date(), command.amount(), command.fromCurrency(), command.toCurrency(), result);
     }
 
     /**
-     * The method checks amount and return true if amount is correct
-     * Params: amount - Initial amount required for the exchange
-     * Throws: ParseNumberFormatException - incorrect amount format
+     * Exchanges the amount into every currency of the date and outputs the results as one table
+     * Params: command - parsed quote command
      */
-    private boolean isSourceAmountFormatCorrect(String amount) {
-        try {
-            Double.parseDouble(amount);
-            return true;
-        } catch (Exception exception) {
-            throw new ParseNumberFormatException("Неверный формат исходной денежной суммы");
-        }
+    private void getQuote(ConsoleCommand.Quote command) {
+        Map<Currency, BigDecimal> quotes = service.quote(command.date(), command.amount(), command.fromCurrency(),
+                localCurrency);
+
+        writer.beginQuote(command.date(), command.amount(), command.fromCurrency());
+        for (Map.Entry<Currency, BigDecimal> quote : quotes.entrySet())
+            writer.quoteRow(quote.getKey(), quote.getValue());
+        writer.endQuote();
     }
 
     /**
-     * The method checks input amount and return true if amount is non-negative
-     * Params: amount - input initial amount
-     * Throws: InputAmountValueException - if amount is non-negative
+     * Values the holdings of the file in the local currency on every stored date of the range
+     * and outputs the totals in date order as they are computed
+     * Params: command - parsed revalue command
      */
-    private boolean isInitialAmountValueCorrect(String amount) {
-        if (BigDecimal.valueOf(Double.parseDouble(amount)).compareTo(BigDecimal.ZERO) < 0)
-            throw new InputAmountValueException("Неверное значение исходной денежной суммы");
-
-        return true;
+    private void revalue(ConsoleCommand.Revalue command) {
+        Map<Currency, BigDecimal> holdings = readHoldings(command.holdingsFile());
+
+        try (Stream<DatedAmount> totals = service.revalue(command.from(), command.to(), holdings, localCurrency)) {
+            writer.beginRevaluation(localCurrency.getLocalCurrency());
+            tableOpen = true;
+            totals.forEachOrdered(writer::revaluationRow);
+            tableOpen = false;
+            writer.endRevaluation();
+        }
     }
 
     /**
-     * The method checks that the initial currency and target currency are supported
-     * Params: fromCurrency - initial currency
-     *         toCurrency - target currency
-     * Throws: UnsupportedCurrencyException - if initial currency or target currency are unsupported
+     * Reads a file with rows "currency, amount". Amounts of the same currency are summed.
+     * Throws: IncorrectCommandFormatException - if the file can't be read or a row is invalid, with the number of the row
      */
-    private boolean isInitialCurrencyUnsupported(String fromCurrency, String toCurrency) {
-        try {
-            Currency.getInstance(fromCurrency);
-        } catch (Exception exception) {
-            throw new UnsupportedCurrencyException("Неподдерживаемая исходная валюта");
-        }
-
-        try {
-            Currency.getInstance(toCurrency);
-        } catch (Exception exception) {
-            throw new UnsupportedCurrencyException("Неподдерживаемая целевая валюта");
+    private Map<Currency, BigDecimal> readHoldings(Path file) {
+        if (!Files.isReadable(file))
+            throw new IncorrectCommandFormatException("Файл не найден");
+
+        Map<Currency, BigDecimal> holdings = new HashMap<>();
+        int rowNumber = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String row;
+            while ((row = reader.readLine()) != null) {
+                rowNumber++;
+                if (row.isBlank()) continue;
+
+                try {
+                    String[] fields = FIELD_SEPARATOR.split(row.strip());
+                    if (fields.length != HOLDINGS_ROW_FIELDS)
+                        throw new IncorrectCommandFormatException("Неверный формат строки");
+
+                    Currency currency = parser.parseCurrency(fields[0]);
+                    BigDecimal amount = parser.parseAmount(fields[1]);
+                    holdings.merge(currency, amount, BigDecimal::add);
+                } catch (ApplicationException exception) {
+                    throw new IncorrectCommandFormatException("Строка " + rowNumber + ": " + exception.getMessage());
+                }
+            }
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
         }
 
-        return true;
+        return holdings;
     }
 }
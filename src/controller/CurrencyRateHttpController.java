@@ -0,0 +1,275 @@
+package controller;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import exceptions.ApplicationException;
+import exceptions.IncorrectCommandFormatException;
+import exceptions.UnknownCommandException;
+import metrics.Metrics;
+import model.CurrencyRate;
+import model.LocalCurrency;
+import service.RateService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the commands of the console controller over HTTP on the loopback interface and answers in JSON.
+ * Arguments are passed as query parameters, for example
+ * GET /exchange?date=2024-06-01&amount=100&from=USD&to=RUB
+ * Commands under /admin/ change data and are accepted only with POST.
+ */
+public class CurrencyRateHttpController {
+
+    /** Delay in seconds given to active requests when the server stops */
+    private final static int STOP_DELAY_SECONDS = 1;
+
+    /** Path prefix of the commands that change data */
+    private final static String ADMIN_PATH = "/admin/";
+
+    private final RateService service;
+    private final LocalCurrency localCurrency;
+    private final ArgumentParser parser;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public CurrencyRateHttpController(RateService service, LocalCurrency localCurrency) {
+        Objects.requireNonNull(service);
+        Objects.requireNonNull(localCurrency);
+
+        this.service = service;
+        this.localCurrency = localCurrency;
+        this.parser = new ArgumentParser(localCurrency);
+    }
+
+    /**
+     * Starts the server on the specific port of the loopback interface. Each request is handled in its own virtual thread
+     * if the runtime supports them, otherwise in a cached thread pool.
+     * Params: port - port of the server
+     * Throws: IOException - if the port can't be bound
+     */
+    public synchronized void start(int port) throws IOException {
+        if (server != null)
+            throw new IllegalStateException("Server is already started.");
+
+        // Headers and body are written separately, without TCP_NODELAY keep-alive requests wait for a delayed ACK
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        executor = newRequestExecutor();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public synchronized void stop() {
+        if (server == null) return;
+
+        server.stop(STOP_DELAY_SECONDS);
+        executor.shutdown();
+        server = null;
+        executor = null;
+    }
+
+    /** Returns the port the server is bound to */
+    public synchronized int getPort() {
+        if (server == null)
+            throw new IllegalStateException("Server isn't started.");
+
+        return server.getAddress().getPort();
+    }
+
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException exception) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int status = 200;
+        String body;
+
+        try {
+            String path = exchange.getRequestURI().getPath();
+            if (path.startsWith(ADMIN_PATH) && !exchange.getRequestMethod().equals("POST")) {
+                status = 405;
+                exchange.getResponseHeaders().set("Allow", "POST");
+                throw new IncorrectCommandFormatException("Команда принимается только методом POST");
+            }
+
+            Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+
+            body = switch (path) {
+                case "/admin/putExchangeRate" -> putRate(parameters);
+                case "/admin/removeExchangeRate" -> removeRate(parameters);
+                case "/listExchangeRates" -> getListExchangeRate(parameters);
+                case "/exchange" -> getExchangeRate(parameters);
+                case "/quote" -> getQuote(parameters);
+                default -> {
+                    status = 404;
+                    throw new UnknownCommandException("Неизвестная команда");
+                }
+            };
+        } catch (ApplicationException ex) {
+            Metrics.recordError(ex);
+            if (status == 200) status = 400;
+            body = "{\"error\":" + JsonStrings.quote(ex.getMessage()) + "}";
+        } catch (Exception exception) {
+            Metrics.recordError(exception);
+            status = 500;
+            body = "{\"error\":" + JsonStrings.quote("Неизвестная ошибка") + "}";
+        }
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(bytes);
+        }
+    }
+
+    private String putRate(Map<String, String> parameters) {
+        String date = requireParameter(parameters, "date");
+        String currency = requireParameter(parameters, "currency");
+        String purchaseRate = requireParameter(parameters, "purchase");
+        String sellingRate = requireParameter(parameters, "selling");
+
+        LocalDate rateDate = parser.parseDate(date);
+        Currency rateCurrency = parser.parseRateCurrency(currency);
+        // the mapping of the console put, so both front ends store a row the same way
+        CurrencyRate currencyRate = new CurrencyRate(
+                rateCurrency,
+                parser.parseSellingRate(sellingRate),
+                parser.parsePurchaseRate(purchaseRate)
+        );
+
+        Map<String, CurrencyRate> currencyMap = new HashMap<>();
+        currencyMap.put(rateCurrency.getCurrencyCode(), currencyRate);
+        service.saveExchangeRate(rateDate, currencyMap);
+
+        return "{\"saved\":true}";
+    }
+
+    private String removeRate(Map<String, String> parameters) {
+        String date = requireParameter(parameters, "date");
+        String currency = requireParameter(parameters, "currency");
+
+        LocalDate rateDate = parser.parseDate(date);
+        String currencyCode = parser.parseRateCurrency(currency).getCurrencyCode();
+
+        return "{\"removed\":" + service.removeExchangeRate(rateDate, currencyCode) + "}";
+    }
+
+    private String getListExchangeRate(Map<String, String> parameters) {
+        String date = requireParameter(parameters, "date");
+        LocalDate rateDate = parser.parseDate(date);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"date\":\"").append(date).append("\",\"rates\":[");
+
+        boolean first = true;
+        for (CurrencyRate rate : service.getMap(rateDate).values()) {
+            if (!first) sb.append(',');
+            first = false;
+
+            sb.append("{\"currency\":\"").append(rate.getCurrency())
+                    .append("\",\"purchase\":\"").append(rate.getPurchaseRate())
+                    .append("\",\"selling\":\"").append(rate.getSellingRate())
+                    .append("\"}");
+        }
+
+        return sb.append("]}").toString();
+    }
+
+    private String getExchangeRate(Map<String, String> parameters) {
+        String date = requireParameter(parameters, "date");
+        String amount = requireParameter(parameters, "amount");
+        String fromCurrency = requireParameter(parameters, "from");
+        String toCurrency = requireParameter(parameters, "to");
+
+        LocalDate exchangeDate = parser.parseDate(date);
+        BigDecimal exchangeAmount = parser.parseAmount(amount);
+        Currency sourceCurrency = parser.parseSourceCurrency(fromCurrency);
+        Currency targetCurrency = parser.parseTargetCurrency(toCurrency);
+
+        BigDecimal result = service.exchange(exchangeDate, exchangeAmount, sourceCurrency, targetCurrency, localCurrency);
+
+        return "{\"result\":\"" + result + "\"}";
+    }
+
+    private String getQuote(Map<String, String> parameters) {
+        String date = requireParameter(parameters, "date");
+        String amount = requireParameter(parameters, "amount");
+        String fromCurrency = requireParameter(parameters, "from");
+
+        LocalDate quoteDate = parser.parseDate(date);
+        BigDecimal quoteAmount = parser.parseAmount(amount);
+        Currency sourceCurrency = parser.parseSourceCurrency(fromCurrency);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"date\":\"").append(date).append("\",\"quotes\":[");
+
+        boolean first = true;
+        for (Map.Entry<Currency, BigDecimal> quote : service.quote(quoteDate, quoteAmount, sourceCurrency, localCurrency).entrySet()) {
+            if (!first) sb.append(',');
+            first = false;
+
+            sb.append("{\"currency\":\"").append(quote.getKey())
+                    .append("\",\"result\":\"").append(quote.getValue())
+                    .append("\"}");
+        }
+
+        return sb.append("]}").toString();
+    }
+
+    /**
+     * Returns the value of a query parameter
+     * Throws: IncorrectCommandFormatException - if the parameter is absent
+     */
+    private static String requireParameter(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null)
+            throw new IncorrectCommandFormatException("Неверный формат команды");
+
+        return value;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) return parameters;
+
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator <= 0) continue;
+
+            parameters.put(decode(pair.substring(0, separator)), decode(pair.substring(separator + 1)));
+        }
+
+        return parameters;
+    }
+
+    /**
+     * Decodes a part of the query string.
+     * Throws: IncorrectCommandFormatException - if the part has a malformed escape sequence
+     */
+    private static String decode(String part) {
+        try {
+            return URLDecoder.decode(part, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException exception) {
+            throw new IncorrectCommandFormatException("Неверный формат команды");
+        }
+    }
+}
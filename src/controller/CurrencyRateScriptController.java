@@ -0,0 +1,44 @@
+package controller;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Runs newline-separated commands one by one through a single controller,
+ * so all commands share one process and the state of its repository.
+ */
+public class CurrencyRateScriptController {
+
+    private final CurrencyRateController controller;
+
+    public CurrencyRateScriptController(CurrencyRateController controller) {
+        Objects.requireNonNull(controller);
+
+        this.controller = controller;
+    }
+
+    /**
+     * Reads commands until the end of the input. Each line is a command and its arguments separated by spaces,
+     * empty lines and lines starting with '#' are skipped.
+     * Params: reader - source of commands
+     * Throws: UncheckedIOException
+     */
+    public void run(BufferedReader reader) {
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String trimmedLine = line.strip();
+                if (trimmedLine.isEmpty() || trimmedLine.startsWith("#")) continue;
+
+                List<String> parts = Arrays.asList(trimmedLine.split("\\s+"));
+                controller.run(parts.get(0), parts.subList(1, parts.size()));
+            }
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+}
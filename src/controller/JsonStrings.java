@@ -0,0 +1,42 @@
+package controller;
+
+/**
+ * Quoting of strings in JSON responses of the controllers.
+ */
+final class JsonStrings {
+
+    private final static char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private JsonStrings() {
+    }
+
+    /** Returns the value as a JSON string literal */
+    static String quote(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        appendQuoted(sb, value);
+
+        return sb.toString();
+    }
+
+    /** Appends the value as a JSON string literal */
+    static void appendQuoted(StringBuilder sb, String value) {
+        sb.append('"');
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+                    else sb.append(c);
+                }
+            }
+        }
+
+        sb.append('"');
+    }
+}
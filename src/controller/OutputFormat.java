@@ -0,0 +1,13 @@
+package controller;
+
+/**
+ * Format of the results of console commands. TEXT is the table for people, CSV and JSON are for other programs:
+ * tables are written with a header row or as a JSON object per command, messages and errors are
+ * plain lines in CSV and {"message":..} or {"error":..} objects in JSON. An error that interrupts a table
+ * is written to stderr in CSV and as the "error" field of the object of the table in JSON.
+ */
+public enum OutputFormat {
+    TEXT,
+    CSV,
+    JSON
+}
@@ -0,0 +1,476 @@
+package controller;
+
+import model.CurrencyRate;
+import model.DatedAmount;
+import model.DatedCurrencyRate;
+
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Currency;
+import java.util.Objects;
+
+/**
+ * Writes the results of console commands in one of the output formats. Tables are streamed row by row:
+ * each row is built in a reused StringBuilder without String.format and written to the stream,
+ * so the stream should be buffered. A table is started with begin, then rows are added and it is finished with end.
+ * A table whose rows fail in the middle is finished with abort instead, so the written part stays well-formed.
+ */
+abstract class ResultWriter {
+
+    /** Message of a table without rows in the text format */
+    private final static String NO_DATA = "Данные отсутствуют";
+
+    protected final PrintStream out;
+
+    /** Row being built */
+    protected final StringBuilder line = new StringBuilder(128);
+
+    protected ResultWriter(PrintStream out) {
+        Objects.requireNonNull(out);
+
+        this.out = out;
+    }
+
+    /**
+     * Params: format - format of the results
+     *         out - stream for the results
+     *         err - stream for the errors that can't be written into a started CSV table
+     */
+    static ResultWriter of(OutputFormat format, PrintStream out, PrintStream err) {
+        return switch (format) {
+            case TEXT -> new Text(out);
+            case CSV -> new Csv(out, err);
+            case JSON -> new Json(out);
+        };
+    }
+
+    /** Writes a message about the result of a command */
+    abstract void message(String message);
+
+    /** Writes a message about an error */
+    abstract void error(String message);
+
+    /** Finishes the started table after its rows failed and writes the message about the error */
+    abstract void abort(String message);
+
+    abstract void beginRates(LocalDate date);
+    abstract void rate(CurrencyRate rate);
+    abstract void endRates();
+
+    abstract void beginHistory(Currency currency);
+    abstract void historyRow(DatedCurrencyRate rate);
+    abstract void endHistory();
+
+    abstract void beginQuote(LocalDate date, BigDecimal amount, Currency fromCurrency);
+    abstract void quoteRow(Currency currency, BigDecimal result);
+    abstract void endQuote();
+
+    abstract void beginRevaluation(Currency localCurrency);
+    abstract void revaluationRow(DatedAmount total);
+    abstract void endRevaluation();
+
+    abstract void exchangeResult(LocalDate date, BigDecimal amount, Currency fromCurrency, Currency toCurrency,
+                                 BigDecimal result);
+
+    /** Writes the built row and clears it */
+    protected void writeLine() {
+        line.append('\n');
+        out.append(line);
+        line.setLength(0);
+    }
+
+    /**
+     * Appends the value truncated to maxLength characters and padded with spaces to width characters
+     * Params: value - appended value
+     *         maxLength - maximum number of characters of the value
+     *         width - minimum number of appended characters
+     */
+    protected void appendColumn(String value, int maxLength, int width) {
+        int length = Math.min(value.length(), maxLength);
+        line.append(value, 0, length);
+        for (int i = length; i < width; i++) line.append(' ');
+    }
+
+    /** Tables as in earlier versions: padded columns and rates of listExchangeRates cut to 3 characters */
+    private static final class Text extends ResultWriter {
+
+        private final static int CURRENCY_WIDTH = 10;
+        private final static int RATE_WIDTH = 10;
+        private final static int DATE_WIDTH = 12;
+
+        /** Number of characters of a rate shown by listExchangeRates */
+        private final static int LISTED_RATE_LENGTH = 3;
+
+        /** Number of rows of the current table */
+        private int rows;
+
+        private Text(PrintStream out) {
+            super(out);
+        }
+
+        @Override
+        void message(String message) {
+            out.println(message);
+        }
+
+        @Override
+        void error(String message) {
+            out.println(message);
+        }
+
+        @Override
+        void abort(String message) {
+            // rows are whole lines, so the message follows them like any error
+            out.println(message);
+        }
+
+        @Override
+        void beginRates(LocalDate date) {
+            rows = 0;
+        }
+
+        @Override
+        void rate(CurrencyRate rate) {
+            if (rows++ == 0) {
+                appendColumn("Валюта", Integer.MAX_VALUE, CURRENCY_WIDTH);
+                line.append(' ');
+                appendColumn("Покупка", Integer.MAX_VALUE, RATE_WIDTH);
+                line.append(' ').append("Продажа");
+                writeLine();
+            }
+
+            appendColumn(rate.getCurrency().getCurrencyCode(), Integer.MAX_VALUE, CURRENCY_WIDTH);
+            line.append(' ');
+            appendColumn(rate.getPurchaseRate().toString(), LISTED_RATE_LENGTH, RATE_WIDTH);
+            line.append(' ');
+            appendColumn(rate.getSellingRate().toString(), LISTED_RATE_LENGTH, 0);
+            writeLine();
+        }
+
+        @Override
+        void endRates() {
+            // the table is followed by an empty line
+            out.println(rows == 0 ? NO_DATA : "");
+        }
+
+        @Override
+        void beginHistory(Currency currency) {
+            rows = 0;
+        }
+
+        @Override
+        void historyRow(DatedCurrencyRate rate) {
+            if (rows++ == 0) {
+                appendColumn("Дата", Integer.MAX_VALUE, DATE_WIDTH);
+                line.append(' ');
+                appendColumn("Покупка", Integer.MAX_VALUE, RATE_WIDTH);
+                line.append(' ').append("Продажа");
+                writeLine();
+            }
+
+            appendColumn(rate.getDate().toString(), Integer.MAX_VALUE, DATE_WIDTH);
+            line.append(' ');
+            appendColumn(rate.getCurrencyRate().getPurchaseRate().toString(), Integer.MAX_VALUE, RATE_WIDTH);
+            line.append(' ').append(rate.getCurrencyRate().getSellingRate());
+            writeLine();
+        }
+
+        @Override
+        void endHistory() {
+            if (rows == 0) out.println(NO_DATA);
+        }
+
+        @Override
+        void beginQuote(LocalDate date, BigDecimal amount, Currency fromCurrency) {
+            rows = 0;
+        }
+
+        @Override
+        void quoteRow(Currency currency, BigDecimal result) {
+            if (rows++ == 0) {
+                appendColumn("Валюта", Integer.MAX_VALUE, CURRENCY_WIDTH);
+                line.append(' ').append("Сумма");
+                writeLine();
+            }
+
+            appendColumn(currency.getCurrencyCode(), Integer.MAX_VALUE, CURRENCY_WIDTH);
+            line.append(' ').append(result);
+            writeLine();
+        }
+
+        @Override
+        void endQuote() {
+            if (rows == 0) out.println(NO_DATA);
+        }
+
+        @Override
+        void beginRevaluation(Currency localCurrency) {
+            rows = 0;
+        }
+
+        @Override
+        void revaluationRow(DatedAmount total) {
+            if (rows++ == 0) {
+                appendColumn("Дата", Integer.MAX_VALUE, DATE_WIDTH);
+                line.append(' ').append("Стоимость");
+                writeLine();
+            }
+
+            appendColumn(total.getDate().toString(), Integer.MAX_VALUE, DATE_WIDTH);
+            line.append(' ').append(total.getAmount());
+            writeLine();
+        }
+
+        @Override
+        void endRevaluation() {
+            if (rows == 0) out.println(NO_DATA);
+        }
+
+        @Override
+        void exchangeResult(LocalDate date, BigDecimal amount, Currency fromCurrency, Currency toCurrency,
+                            BigDecimal result) {
+            out.println(result);
+        }
+    }
+
+    /**
+     * Comma-separated rows with a header row, rates with all digits.
+     * An error after the header of a table is written to err, so it isn't read as a row of the table.
+     */
+    private static final class Csv extends ResultWriter {
+
+        private final PrintStream err;
+
+        private Csv(PrintStream out, PrintStream err) {
+            super(out);
+            Objects.requireNonNull(err);
+
+            this.err = err;
+        }
+
+        @Override
+        void message(String message) {
+            out.println(message);
+        }
+
+        @Override
+        void error(String message) {
+            out.println(message);
+        }
+
+        @Override
+        void abort(String message) {
+            out.flush();
+            err.println(message);
+        }
+
+        @Override
+        void beginRates(LocalDate date) {
+            out.println("currency,purchase,selling");
+        }
+
+        @Override
+        void rate(CurrencyRate rate) {
+            line.append(rate.getCurrency().getCurrencyCode()).append(',')
+                    .append(rate.getPurchaseRate()).append(',')
+                    .append(rate.getSellingRate());
+            writeLine();
+        }
+
+        @Override
+        void endRates() {
+        }
+
+        @Override
+        void beginHistory(Currency currency) {
+            out.println("date,purchase,selling");
+        }
+
+        @Override
+        void historyRow(DatedCurrencyRate rate) {
+            line.append(rate.getDate()).append(',')
+                    .append(rate.getCurrencyRate().getPurchaseRate()).append(',')
+                    .append(rate.getCurrencyRate().getSellingRate());
+            writeLine();
+        }
+
+        @Override
+        void endHistory() {
+        }
+
+        @Override
+        void beginQuote(LocalDate date, BigDecimal amount, Currency fromCurrency) {
+            out.println("currency,result");
+        }
+
+        @Override
+        void quoteRow(Currency currency, BigDecimal result) {
+            line.append(currency.getCurrencyCode()).append(',').append(result);
+            writeLine();
+        }
+
+        @Override
+        void endQuote() {
+        }
+
+        @Override
+        void beginRevaluation(Currency localCurrency) {
+            out.println("date,total");
+        }
+
+        @Override
+        void revaluationRow(DatedAmount total) {
+            line.append(total.getDate()).append(',').append(total.getAmount());
+            writeLine();
+        }
+
+        @Override
+        void endRevaluation() {
+        }
+
+        @Override
+        void exchangeResult(LocalDate date, BigDecimal amount, Currency fromCurrency, Currency toCurrency,
+                            BigDecimal result) {
+            out.println("date,amount,from,to,result");
+            line.append(date).append(',').append(amount).append(',')
+                    .append(fromCurrency.getCurrencyCode()).append(',')
+                    .append(toCurrency.getCurrencyCode()).append(',')
+                    .append(result);
+            writeLine();
+        }
+    }
+
+    /** One JSON object per command on one line, in the format of the HTTP controller */
+    private static final class Json extends ResultWriter {
+
+        /** If the current array has no elements yet */
+        private boolean firstElement;
+
+        private Json(PrintStream out) {
+            super(out);
+        }
+
+        @Override
+        void message(String message) {
+            line.append("{\"message\":");
+            JsonStrings.appendQuoted(line, message);
+            line.append('}');
+            writeLine();
+        }
+
+        @Override
+        void error(String message) {
+            line.append("{\"error\":");
+            JsonStrings.appendQuoted(line, message);
+            line.append('}');
+            writeLine();
+        }
+
+        /** Closes the array of the started object and adds the error to it */
+        @Override
+        void abort(String message) {
+            line.setLength(0);
+            line.append("],\"error\":");
+            JsonStrings.appendQuoted(line, message);
+            line.append('}');
+            writeLine();
+        }
+
+        /** Writes the start of an object with an array, the array elements follow on the same line */
+        private void begin(String head) {
+            out.print(head);
+            firstElement = true;
+        }
+
+        /** Writes the built element of the array */
+        private void writeElement() {
+            if (!firstElement) out.print(',');
+            firstElement = false;
+
+            out.append(line);
+            line.setLength(0);
+        }
+
+        @Override
+        void beginRates(LocalDate date) {
+            begin("{\"date\":\"" + date + "\",\"rates\":[");
+        }
+
+        @Override
+        void rate(CurrencyRate rate) {
+            line.append("{\"currency\":\"").append(rate.getCurrency().getCurrencyCode())
+                    .append("\",\"purchase\":\"").append(rate.getPurchaseRate())
+                    .append("\",\"selling\":\"").append(rate.getSellingRate())
+                    .append("\"}");
+            writeElement();
+        }
+
+        @Override
+        void endRates() {
+            out.println("]}");
+        }
+
+        @Override
+        void beginHistory(Currency currency) {
+            begin("{\"currency\":\"" + currency.getCurrencyCode() + "\",\"rates\":[");
+        }
+
+        @Override
+        void historyRow(DatedCurrencyRate rate) {
+            line.append("{\"date\":\"").append(rate.getDate())
+                    .append("\",\"purchase\":\"").append(rate.getCurrencyRate().getPurchaseRate())
+                    .append("\",\"selling\":\"").append(rate.getCurrencyRate().getSellingRate())
+                    .append("\"}");
+            writeElement();
+        }
+
+        @Override
+        void endHistory() {
+            out.println("]}");
+        }
+
+        @Override
+        void beginQuote(LocalDate date, BigDecimal amount, Currency fromCurrency) {
+            begin("{\"date\":\"" + date + "\",\"quotes\":[");
+        }
+
+        @Override
+        void quoteRow(Currency currency, BigDecimal result) {
+            line.append("{\"currency\":\"").append(currency.getCurrencyCode())
+                    .append("\",\"result\":\"").append(result)
+                    .append("\"}");
+            writeElement();
+        }
+
+        @Override
+        void endQuote() {
+            out.println("]}");
+        }
+
+        @Override
+        void beginRevaluation(Currency localCurrency) {
+            begin("{\"currency\":\"" + localCurrency.getCurrencyCode() + "\",\"totals\":[");
+        }
+
+        @Override
+        void revaluationRow(DatedAmount total) {
+            line.append("{\"date\":\"").append(total.getDate())
+                    .append("\",\"total\":\"").append(total.getAmount())
+                    .append("\"}");
+            writeElement();
+        }
+
+        @Override
+        void endRevaluation() {
+            out.println("]}");
+        }
+
+        @Override
+        void exchangeResult(LocalDate date, BigDecimal amount, Currency fromCurrency, Currency toCurrency,
+                            BigDecimal result) {
+            line.append("{\"result\":\"").append(result).append("\"}");
+            writeLine();
+        }
+    }
+}
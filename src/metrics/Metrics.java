@@ -0,0 +1,155 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide registry of timers and counters. Instrumented code looks up its timers once and checks
+ * isEnabled before reading the clock, so disabled metrics cost one volatile read per operation.
+ * Names are dot-separated: "command.exchange", "repository.getCurrencyRateMap", "errors.CurrencyDataException".
+ */
+public final class Metrics implements MetricsMXBean {
+
+    /** Name of the platform MBean */
+    public final static String OBJECT_NAME = "currency:type=Metrics";
+
+    /** Prefix of the error counters, followed by the simple name of the exception class */
+    private final static String ERROR_PREFIX = "errors.";
+
+    private final static Metrics INSTANCE = new Metrics();
+
+    private final Map<String, LatencyHistogram> timers = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    private volatile boolean enabled;
+
+    private Metrics() {
+    }
+
+    public static Metrics getInstance() {
+        return INSTANCE;
+    }
+
+    /** Returns the timer with the name, creating it at the first call */
+    public static LatencyHistogram timer(String name) {
+        return INSTANCE.timers.computeIfAbsent(name, ignored -> new LatencyHistogram());
+    }
+
+    /** Returns the counter with the name, creating it at the first call */
+    public static LongAdder counter(String name) {
+        return INSTANCE.counters.computeIfAbsent(name, ignored -> new LongAdder());
+    }
+
+    public static boolean enabled() {
+        return INSTANCE.enabled;
+    }
+
+    /**
+     * Counts an error by the class of the exception.
+     * Params: exception - error reported to the user
+     */
+    public static void recordError(Exception exception) {
+        if (INSTANCE.enabled) counter(ERROR_PREFIX + exception.getClass().getSimpleName()).increment();
+    }
+
+    /**
+     * Registers the registry as a platform MBean. Repeated calls are ignored.
+     * Throws: IllegalStateException - if the MBean server rejects the registration
+     */
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException ignored) {
+            // registered earlier
+        } catch (JMException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getOperationCounts() {
+        return timerValues(LatencyHistogram::getCount);
+    }
+
+    @Override
+    public Map<String, Long> getMeanLatencyNanos() {
+        return timerValues(LatencyHistogram::getMeanNanos);
+    }
+
+    @Override
+    public Map<String, Long> getP50LatencyNanos() {
+        return timerValues(timer -> timer.getPercentileNanos(0.5));
+    }
+
+    @Override
+    public Map<String, Long> getP99LatencyNanos() {
+        return timerValues(timer -> timer.getPercentileNanos(0.99));
+    }
+
+    @Override
+    public Map<String, Long> getMaxLatencyNanos() {
+        return timerValues(LatencyHistogram::getMaxNanos);
+    }
+
+    private Map<String, Long> timerValues(ToLongFunction<LatencyHistogram> value) {
+        Map<String, Long> values = new TreeMap<>();
+        timers.forEach((name, timer) -> values.put(name, value.applyAsLong(timer)));
+        return values;
+    }
+
+    /**
+     * Returns a table of the timers that have been called (count, mean, p50, p99, max in microseconds)
+     * followed by the non-zero counters.
+     */
+    @Override
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("%-40s %10s %10s %10s %10s %10s%n", "operation", "count", "mean,us", "p50,us",
+                "p99,us", "max,us"));
+
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(timers).entrySet()) {
+            LatencyHistogram timer = entry.getValue();
+            if (timer.getCount() == 0) continue;
+
+            summary.append(String.format("%-40s %10d %10.1f %10.1f %10.1f %10.1f%n", entry.getKey(), timer.getCount(),
+                    timer.getMeanNanos() / 1e3, timer.getPercentileNanos(0.5) / 1e3,
+                    timer.getPercentileNanos(0.99) / 1e3, timer.getMaxNanos() / 1e3));
+        }
+
+        for (Map.Entry<String, Long> entry : getCounters().entrySet()) {
+            if (entry.getValue() != 0) summary.append(String.format("%-40s %10d%n", entry.getKey(), entry.getValue()));
+        }
+
+        return summary.toString();
+    }
+
+    @Override
+    public void reset() {
+        timers.values().forEach(LatencyHistogram::reset);
+        counters.values().forEach(LongAdder::reset);
+    }
+}
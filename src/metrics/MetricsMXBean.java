@@ -0,0 +1,34 @@
+package metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of the application metrics, registered as currency:type=Metrics.
+ * Latencies are in nanoseconds, maps are keyed by the names of the timers and counters.
+ */
+public interface MetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /** Returns the values of all counters: bytes read and written, errors by exception type */
+    Map<String, Long> getCounters();
+
+    /** Returns the number of calls of each timed operation */
+    Map<String, Long> getOperationCounts();
+
+    Map<String, Long> getMeanLatencyNanos();
+
+    Map<String, Long> getP50LatencyNanos();
+
+    Map<String, Long> getP99LatencyNanos();
+
+    Map<String, Long> getMaxLatencyNanos();
+
+    /** Returns the table printed on exit */
+    String getSummary();
+
+    /** Clears all counters and timers */
+    void reset();
+}
@@ -0,0 +1,34 @@
+package model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Objects;
+
+public class DatedAmount {
+
+    /**
+     * Date of the valuation
+     */
+    private final LocalDate date;
+
+    /**
+     * Amount of money on the date
+     */
+    private final BigDecimal amount;
+
+    public DatedAmount(LocalDate date, BigDecimal amount) {
+        Objects.requireNonNull(date);
+        Objects.requireNonNull(amount);
+
+        this.date = date;
+        this.amount = amount;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+}
@@ -0,0 +1,33 @@
+package model;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+public class DatedCurrencyRate {
+
+    /**
+     * Date of the exchange rate
+     */
+    private final LocalDate date;
+
+    /**
+     * Exchange rate on the date
+     */
+    private final CurrencyRate currencyRate;
+
+    public DatedCurrencyRate(LocalDate date, CurrencyRate currencyRate) {
+        Objects.requireNonNull(date);
+        Objects.requireNonNull(currencyRate);
+
+        this.date = date;
+        this.currencyRate = currencyRate;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public CurrencyRate getCurrencyRate() {
+        return currencyRate;
+    }
+}
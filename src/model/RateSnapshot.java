@@ -0,0 +1,64 @@
+package model;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Immutable rates of one date, safe to share between threads without copying.
+ * A data store publishes a new snapshot of a date when its rates change. Versions are drawn from one counter
+ * of the process: a snapshot of a date with rates has a greater version than the snapshots of the date
+ * published before it, so two snapshots with the same version have the same rates.
+ * A new version doesn't always mean changed rates, e.g. files read by a reader before their writer published them.
+ */
+public final class RateSnapshot {
+
+    /** Version of a date without rates and of snapshots of data stores that don't track versions */
+    public final static long UNVERSIONED = 0;
+
+    /** Last version drawn in the process */
+    private final static AtomicLong LAST_VERSION = new AtomicLong();
+
+    private final LocalDate date;
+    private final long version;
+
+    /** Unmodifiable rates by currency code */
+    private final Map<String, CurrencyRate> rates;
+
+    /**
+     * Params: date - date of the rates
+     *         version - version of the snapshot
+     *         rates - rates by currency code, copied
+     */
+    public RateSnapshot(LocalDate date, long version, Map<String, CurrencyRate> rates) {
+        Objects.requireNonNull(date);
+        Objects.requireNonNull(rates);
+
+        this.date = date;
+        this.version = version;
+        this.rates = rates.isEmpty() ? Map.of() : Collections.unmodifiableMap(new HashMap<>(rates));
+    }
+
+    /** Returns a version greater than all versions drawn before */
+    public static long nextVersion() {
+        return LAST_VERSION.incrementAndGet();
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /** Returns the unmodifiable rates by currency code */
+    public Map<String, CurrencyRate> getRates() {
+        return rates;
+    }
+
+    /** Returns the rate of the currency or null if it is absent */
+    public CurrencyRate getRate(Currency currency) {
+        return rates.get(currency.getCurrencyCode());
+    }
+}
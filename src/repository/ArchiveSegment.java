@@ -0,0 +1,312 @@
+package repository;
+
+import exceptions.CurrencyDataException;
+import metrics.Metrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+
+/**
+ * Immutable file that packs the day files of a closed range of dates.
+ * Layout: header (magic, version, first and last date of the range, number of dates, number of blocks,
+ * offset of the index), then blocks, then the index. A block holds consecutive dates, each as the epoch day,
+ * the length and the content of its day file. The index is the sorted epoch days of all packed dates
+ * and a sparse table with the first epoch day, offset, length and CRC32C of each block,
+ * it is followed by the CRC32C of the index itself. A date is found by a binary search in the sparse table,
+ * and only its block is read and verified.
+ */
+final class ArchiveSegment {
+
+    /** "CSEG" in ASCII */
+    private final static int MAGIC = 0x43534547;
+    private final static int VERSION = 1;
+
+    /** Magic, version, from, to, date count, block count, index offset */
+    private final static int HEADER_SIZE = 40;
+
+    /** First epoch day, offset, length and checksum of a block */
+    private final static int BLOCK_ENTRY_SIZE = 24;
+
+    /** Epoch day and length before the content of a date in a block */
+    private final static int DAY_HEADER_SIZE = 12;
+
+    /** Size after which a block is closed, a single day file may make a block larger */
+    private final static int TARGET_BLOCK_SIZE = 32 * 1024;
+
+    /** Extension of segment files */
+    final static String EXTENSION = ".seg";
+
+    private final static String TEMP_EXTENSION = ".tmp";
+
+    private final static LongAdder BYTES_READ = Metrics.counter("repository.bytesRead");
+    private final static LongAdder BYTES_WRITTEN = Metrics.counter("repository.bytesWritten");
+
+    private final Path path;
+    private final FileChannel channel;
+
+    private final LocalDate from;
+    private final LocalDate to;
+
+    /** Sorted epoch days of all packed dates */
+    private final long[] days;
+
+    private final long[] blockFirstDays;
+    private final long[] blockOffsets;
+    private final int[] blockLengths;
+    private final int[] blockChecksums;
+
+    /** Last verified block, sequential reads of dates of one block read it once */
+    private volatile Block lastBlock;
+
+    private record Block(int number, byte[] bytes) {
+    }
+
+    private ArchiveSegment(Path path, FileChannel channel, LocalDate from, LocalDate to, long[] days,
+                           long[] blockFirstDays, long[] blockOffsets, int[] blockLengths, int[] blockChecksums) {
+        this.path = path;
+        this.channel = channel;
+        this.from = from;
+        this.to = to;
+        this.days = days;
+        this.blockFirstDays = blockFirstDays;
+        this.blockOffsets = blockOffsets;
+        this.blockLengths = blockLengths;
+        this.blockChecksums = blockChecksums;
+    }
+
+    /**
+     * Opens the segment and reads its index.
+     * Params: path - path to the segment file
+     * Throws: IOException
+     *         CurrencyDataException - if the file has an unknown format or the index is damaged
+     */
+    static ArchiveSegment open(Path path) throws IOException {
+        Objects.requireNonNull(path);
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION)
+                throw damaged(path);
+
+            LocalDate from = LocalDate.ofEpochDay(header.getLong());
+            LocalDate to = LocalDate.ofEpochDay(header.getLong());
+            int dateCount = header.getInt();
+            int blockCount = header.getInt();
+            long indexOffset = header.getLong();
+
+            long indexSize = (long) dateCount * Long.BYTES + (long) blockCount * BLOCK_ENTRY_SIZE;
+            if (dateCount < 0 || blockCount < 0 || indexOffset < HEADER_SIZE ||
+                    indexOffset + indexSize + Integer.BYTES != channel.size())
+                throw damaged(path);
+
+            ByteBuffer index = readFully(channel, indexOffset, (int) indexSize + Integer.BYTES);
+            CRC32C checksum = new CRC32C();
+            checksum.update(index.array(), 0, (int) indexSize);
+            if (index.getInt((int) indexSize) != (int) checksum.getValue())
+                throw damaged(path);
+
+            long[] days = new long[dateCount];
+            for (int i = 0; i < dateCount; i++) days[i] = index.getLong();
+
+            long[] blockFirstDays = new long[blockCount];
+            long[] blockOffsets = new long[blockCount];
+            int[] blockLengths = new int[blockCount];
+            int[] blockChecksums = new int[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                blockFirstDays[i] = index.getLong();
+                blockOffsets[i] = index.getLong();
+                blockLengths[i] = index.getInt();
+                blockChecksums[i] = index.getInt();
+            }
+
+            return new ArchiveSegment(path, channel, from, to, days, blockFirstDays, blockOffsets, blockLengths,
+                    blockChecksums);
+        } catch (IOException | RuntimeException exception) {
+            channel.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * Writes the day files into a new segment. The segment is written to a temporary file
+     * that is atomically moved to the path, so a crash never leaves a truncated segment.
+     * Params: path - path to the segment file
+     *         from - first date of the range
+     *         to - last date of the range
+     *         dayFiles - contents of day files by date, all dates are within the range
+     * Throws: IOException
+     */
+    static void write(Path path, LocalDate from, LocalDate to, SortedMap<LocalDate, byte[]> dayFiles) throws IOException {
+        Objects.requireNonNull(path);
+        Objects.requireNonNull(from);
+        Objects.requireNonNull(to);
+        Objects.requireNonNull(dayFiles);
+
+        List<long[]> blocks = new ArrayList<>();
+        ByteBuffer index = ByteBuffer.allocate(dayFiles.size() * Long.BYTES);
+        Path tempPath = path.resolveSibling(path.getFileName() + TEMP_EXTENSION);
+
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long offset = HEADER_SIZE;
+            ByteBuffer block = null;
+
+            for (Map.Entry<LocalDate, byte[]> dayFile : dayFiles.entrySet()) {
+                long epochDay = dayFile.getKey().toEpochDay();
+                byte[] content = dayFile.getValue();
+                index.putLong(epochDay);
+
+                if (block != null && block.position() + DAY_HEADER_SIZE + content.length > TARGET_BLOCK_SIZE) {
+                    offset += writeBlock(channel, block, offset, blocks);
+                    block = null;
+                }
+                if (block == null) {
+                    block = ByteBuffer.allocate(Math.max(TARGET_BLOCK_SIZE, DAY_HEADER_SIZE + content.length));
+                    blocks.add(new long[] {epochDay, 0, 0, 0});
+                }
+
+                block.putLong(epochDay).putInt(content.length).put(content);
+            }
+            if (block != null) offset += writeBlock(channel, block, offset, blocks);
+
+            ByteBuffer table = ByteBuffer.allocate(index.capacity() + blocks.size() * BLOCK_ENTRY_SIZE + Integer.BYTES);
+            table.put(index.flip());
+            for (long[] entry : blocks)
+                table.putLong(entry[0]).putLong(entry[1]).putInt((int) entry[2]).putInt((int) entry[3]);
+
+            CRC32C checksum = new CRC32C();
+            checksum.update(table.array(), 0, table.position());
+            table.putInt((int) checksum.getValue());
+            writeFully(channel, table.flip(), offset);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(from.toEpochDay()).putLong(to.toEpochDay())
+                    .putInt(dayFiles.size()).putInt(blocks.size()).putLong(offset);
+            writeFully(channel, header.flip(), 0);
+
+            channel.force(true);
+            if (Metrics.enabled()) BYTES_WRITTEN.add(offset + table.capacity());
+        } catch (IOException exception) {
+            Files.deleteIfExists(tempPath);
+            throw exception;
+        }
+
+        Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Writes the block and fills the offset, length and checksum of its index entry. Returns the length */
+    private static int writeBlock(FileChannel channel, ByteBuffer block, long offset, List<long[]> blocks) throws IOException {
+        block.flip();
+        CRC32C checksum = new CRC32C();
+        checksum.update(block.array(), 0, block.limit());
+
+        long[] entry = blocks.get(blocks.size() - 1);
+        entry[1] = offset;
+        entry[2] = block.limit();
+        entry[3] = (int) checksum.getValue();
+
+        writeFully(channel, block, offset);
+        return (int) entry[2];
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) position += channel.write(buffer, position);
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Unexpected end of " + channel);
+        }
+        if (Metrics.enabled()) BYTES_READ.add(length);
+
+        return buffer.flip();
+    }
+
+    private static CurrencyDataException damaged(Path path) {
+        return new CurrencyDataException("Файл архива повреждён: " + path.getFileName());
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    LocalDate getFrom() {
+        return from;
+    }
+
+    LocalDate getTo() {
+        return to;
+    }
+
+    /** Returns true if the closed range of dates intersects the range of the segment */
+    boolean overlaps(LocalDate from, LocalDate to) {
+        return !from.isAfter(this.to) && !to.isBefore(this.from);
+    }
+
+    boolean contains(LocalDate date) {
+        return Arrays.binarySearch(days, date.toEpochDay()) >= 0;
+    }
+
+    /** Returns all packed dates in ascending order */
+    List<LocalDate> getDates() {
+        List<LocalDate> dates = new ArrayList<>(days.length);
+        for (long day : days) dates.add(LocalDate.ofEpochDay(day));
+
+        return dates;
+    }
+
+    /**
+     * Returns the content of the day file of a date or null if the date isn't packed.
+     * Throws: IOException
+     *         CurrencyDataException - if the checksum of the block doesn't match
+     */
+    byte[] read(LocalDate date) throws IOException {
+        long epochDay = date.toEpochDay();
+        if (Arrays.binarySearch(days, epochDay) < 0) return null;
+
+        int number = Arrays.binarySearch(blockFirstDays, epochDay);
+        if (number < 0) number = -number - 2;
+
+        byte[] block = readBlock(number);
+        ByteBuffer entries = ByteBuffer.wrap(block);
+        while (entries.remaining() >= DAY_HEADER_SIZE) {
+            long day = entries.getLong();
+            int length = entries.getInt();
+            if (length < 0 || length > entries.remaining()) throw damaged(path);
+
+            if (day == epochDay) return Arrays.copyOfRange(block, entries.position(), entries.position() + length);
+            entries.position(entries.position() + length);
+        }
+
+        throw damaged(path);
+    }
+
+    private byte[] readBlock(int number) throws IOException {
+        Block block = lastBlock;
+        if (block != null && block.number() == number) return block.bytes();
+
+        byte[] bytes = readFully(channel, blockOffsets[number], blockLengths[number]).array();
+        CRC32C checksum = new CRC32C();
+        checksum.update(bytes);
+        if ((int) checksum.getValue() != blockChecksums[number]) throw damaged(path);
+
+        lastBlock = new Block(number, bytes);
+        return bytes;
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+}
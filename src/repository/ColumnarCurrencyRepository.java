@@ -0,0 +1,436 @@
+package repository;
+
+import exceptions.CurrencyDataException;
+import model.CurrencyRate;
+import model.RateSnapshot;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps the rates of all dates of another data store in memory as primitive columns. Dates are day ordinals
+ * counted from the first date of the range, currencies are CurrencyIndex ids. Each currency has a column of
+ * purchase and a column of selling rates stored as unscaled longs with one scale per column, and a column of
+ * scale reductions, so a rate is restored with its own scale: 3.10 stays 3.10 in a column of scale 4.
+ * A rate that doesn't fit into a long at the scale of its column is kept as an object in a separate map.
+ * CurrencyRate objects are created only when rates are returned. A column of snapshot versions by day ordinal
+ * has a version drawn when a date is loaded and on every change of its rates.
+ * Writes go to the source data store first, changes made to the source by other processes aren't visible.
+ */
+public class ColumnarCurrencyRepository implements DataStoreRep {
+
+    /** Unscaled value of a cell without a rate, rates are positive */
+    private final static long ABSENT = 0;
+
+    /** Unscaled purchase rate of a cell whose rate is kept in the overflow map */
+    private final static long OVERFLOW = -1;
+
+    /** Maximum scale reduction of a cell, 10^18 is the largest power of ten in a long */
+    private final static int MAX_SCALE_REDUCTION = 18;
+
+    private final static long[] POWERS_OF_TEN = new long[MAX_SCALE_REDUCTION + 1];
+
+    /** Days added to the range on growth at least, so appending dates one by one doesn't copy the columns every time */
+    private final static int MIN_GROWTH_DAYS = 32;
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    private final DataStoreRep source;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Epoch day of the day ordinal 0 */
+    private long firstEpochDay;
+
+    /** Number of days in the columns */
+    private int capacity;
+
+    /** Day ordinals of stored dates */
+    private BitSet storedDays = new BitSet();
+
+    /** Snapshot versions by day ordinal */
+    private long[] versions = new long[0];
+
+    /** Columns by currency id, null for currencies without rates */
+    private final long[][] purchaseColumns = new long[CurrencyIndex.size()][];
+    private final long[][] sellingColumns = new long[CurrencyIndex.size()][];
+    private final byte[][] purchaseReductions = new byte[CurrencyIndex.size()][];
+    private final byte[][] sellingReductions = new byte[CurrencyIndex.size()][];
+    private final int[] purchaseScales = new int[CurrencyIndex.size()];
+    private final int[] sellingScales = new int[CurrencyIndex.size()];
+
+    /** Rates that don't fit into their columns by cell key, see cellKey */
+    private final Map<Long, CurrencyRate> overflow = new HashMap<>();
+
+    /**
+     * Loads the rates of all dates of the source.
+     * Params: source - data store that keeps the rates and receives writes
+     */
+    public ColumnarCurrencyRepository(DataStoreRep source) {
+        Objects.requireNonNull(source);
+
+        this.source = source;
+
+        // the lock publishes the loaded columns to readers of other threads
+        lock.writeLock().lock();
+        try {
+            SortedSet<LocalDate> dates = source.getDates();
+            if (!dates.isEmpty()) {
+                firstEpochDay = dates.first().toEpochDay();
+                capacity = Math.toIntExact(dates.last().toEpochDay() - firstEpochDay + 1);
+                versions = new long[capacity];
+            }
+
+            for (LocalDate date : dates) {
+                storedDays.set(ordinalOf(date));
+                versions[ordinalOf(date)] = RateSnapshot.nextVersion();
+                for (CurrencyRate rate : source.getCurrencyRateMap(date).values())
+                    store(date, rate);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Returns the number of bytes of the columns, the overflow map isn't counted */
+    public long getColumnBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = storedDays.size() / Byte.SIZE + (long) capacity * Long.BYTES;
+            for (int id = 0; id < purchaseColumns.length; id++) {
+                if (purchaseColumns[id] == null) continue;
+                bytes += 2L * capacity * Long.BYTES + 2L * capacity;
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Returns the number of rates kept in the overflow map */
+    public int getOverflowCount() {
+        lock.readLock().lock();
+        try {
+            return overflow.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int ordinalOf(LocalDate date) {
+        return (int) (date.toEpochDay() - firstEpochDay);
+    }
+
+    private boolean inRange(LocalDate date) {
+        long ordinal = date.toEpochDay() - firstEpochDay;
+        return ordinal >= 0 && ordinal < capacity;
+    }
+
+    private static long cellKey(LocalDate date, int id) {
+        return date.toEpochDay() * CurrencyIndex.size() + id;
+    }
+
+    @Override
+    public SortedSet<LocalDate> getDates() {
+        lock.readLock().lock();
+        try {
+            return datesOf(0, capacity);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public SortedSet<LocalDate> getDates(LocalDate from, LocalDate to) {
+        lock.readLock().lock();
+        try {
+            long fromOrdinal = Math.max(0, from.toEpochDay() - firstEpochDay);
+            long toOrdinal = Math.min(capacity, to.toEpochDay() - firstEpochDay + 1);
+            return fromOrdinal >= toOrdinal ? new TreeSet<>() : datesOf((int) fromOrdinal, (int) toOrdinal);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Returns the stored dates from a day ordinal (inclusive) to a day ordinal (exclusive) */
+    private SortedSet<LocalDate> datesOf(int fromOrdinal, int toOrdinal) {
+        SortedSet<LocalDate> dates = new TreeSet<>();
+        for (int ordinal = storedDays.nextSetBit(fromOrdinal); ordinal >= 0 && ordinal < toOrdinal;
+             ordinal = storedDays.nextSetBit(ordinal + 1))
+            dates.add(LocalDate.ofEpochDay(firstEpochDay + ordinal));
+
+        return dates;
+    }
+
+    @Override
+    public LocalDate getFloorDate(LocalDate date) {
+        lock.readLock().lock();
+        try {
+            long ordinal = Math.min(date.toEpochDay() - firstEpochDay, capacity - 1L);
+            if (ordinal < 0) return null;
+
+            int floor = storedDays.previousSetBit((int) ordinal);
+            return floor < 0 ? null : LocalDate.ofEpochDay(firstEpochDay + floor);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the rate of one currency on a specific date, or null if it is absent.
+     * Params: date - date of exchange rate
+     *         currency - currency in ISO format
+     */
+    @Override
+    public CurrencyRate getCurrencyRate(LocalDate date, Currency currency) {
+        int id = CurrencyIndex.idOf(currency);
+        if (id < 0) return null;
+
+        lock.readLock().lock();
+        try {
+            return inRange(date) ? rateOf(date, ordinalOf(date), id) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the unmodifiable map of all CurrencyRates stored on a specific date.
+     * Params: date - date of exchange rate
+     */
+    @Override
+    public Map<String, CurrencyRate> getCurrencyRateMap(LocalDate date) {
+        lock.readLock().lock();
+        try {
+            return inRange(date) ? Collections.unmodifiableMap(ratesOf(date)) : Map.of();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the rates of a specific date with the version of the date.
+     * A date without rates has an unversioned snapshot.
+     */
+    @Override
+    public RateSnapshot getSnapshot(LocalDate date) {
+        lock.readLock().lock();
+        try {
+            if (!inRange(date)) return new RateSnapshot(date, RateSnapshot.UNVERSIONED, Map.of());
+
+            Map<String, CurrencyRate> currencyRateMap = ratesOf(date);
+            long version = currencyRateMap.isEmpty() ? RateSnapshot.UNVERSIONED : versions[ordinalOf(date)];
+            return new RateSnapshot(date, version, currencyRateMap);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Creates the rates of all cells of the date. The date must be in range. Must be called under the lock */
+    private Map<String, CurrencyRate> ratesOf(LocalDate date) {
+        Map<String, CurrencyRate> currencyRateMap = new HashMap<>();
+
+        int ordinal = ordinalOf(date);
+        for (int id = 0; id < purchaseColumns.length; id++) {
+            if (purchaseColumns[id] == null) continue;
+
+            CurrencyRate rate = rateOf(date, ordinal, id);
+            if (rate != null) currencyRateMap.put(rate.getCurrency().getCurrencyCode(), rate);
+        }
+
+        return currencyRateMap;
+    }
+
+    /** Creates the rate of a cell or returns null if the cell is empty. Must be called under the lock */
+    private CurrencyRate rateOf(LocalDate date, int ordinal, int id) {
+        long[] purchaseColumn = purchaseColumns[id];
+        if (purchaseColumn == null || purchaseColumn[ordinal] == ABSENT) return null;
+        if (purchaseColumn[ordinal] == OVERFLOW) return overflow.get(cellKey(date, id));
+
+        return new CurrencyRate(CurrencyIndex.currencyOf(id),
+                decimalOf(purchaseColumn[ordinal], purchaseScales[id], purchaseReductions[id][ordinal]),
+                decimalOf(sellingColumns[id][ordinal], sellingScales[id], sellingReductions[id][ordinal]));
+    }
+
+    private static BigDecimal decimalOf(long unscaled, int scale, byte reduction) {
+        return BigDecimal.valueOf(unscaled / POWERS_OF_TEN[reduction], scale - reduction);
+    }
+
+    /**
+     * Writes rates to the source and to the columns. If the rate already exists, it'll be overwritten.
+     * Params: date - date of exchange rate
+     *         currencyRate - rates on a specific date
+     */
+    @Override
+    public void putExchangeRate(LocalDate date, Map<String, CurrencyRate> currencyRate) {
+        lock.writeLock().lock();
+        try {
+            source.putExchangeRate(date, currencyRate);
+
+            ensureCapacity(date);
+            storedDays.set(ordinalOf(date));
+            for (CurrencyRate rate : currencyRate.values())
+                store(date, rate);
+            versions[ordinalOf(date)] = RateSnapshot.nextVersion();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the rate from the source and clears its cell.
+     * Returns true if the currency has been deleted, and false if the currency doesn't exist
+     */
+    @Override
+    public boolean removeExchangeRate(LocalDate date, String currency) {
+        lock.writeLock().lock();
+        try {
+            if (!source.removeExchangeRate(date, currency)) return false;
+
+            int id = CurrencyIndex.idOf(Currency.getInstance(currency));
+            if (id >= 0 && inRange(date) && purchaseColumns[id] != null) {
+                purchaseColumns[id][ordinalOf(date)] = ABSENT;
+                overflow.remove(cellKey(date, id));
+                versions[ordinalOf(date)] = RateSnapshot.nextVersion();
+            }
+
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stores the rate in its cell, rescaling the columns of the currency if the rate has more digits after the point.
+     * The date must be in range. Must be called under the write lock.
+     */
+    private void store(LocalDate date, CurrencyRate rate) {
+        int id = CurrencyIndex.idOf(rate.getCurrency());
+        if (id < 0)
+            throw new CurrencyDataException("Курс валюты не может быть сохранён");
+
+        if (purchaseColumns[id] == null) {
+            purchaseColumns[id] = new long[capacity];
+            sellingColumns[id] = new long[capacity];
+            purchaseReductions[id] = new byte[capacity];
+            sellingReductions[id] = new byte[capacity];
+            purchaseScales[id] = rate.getPurchaseRate().scale();
+            sellingScales[id] = rate.getSellingRate().scale();
+        }
+
+        int ordinal = ordinalOf(date);
+        long key = cellKey(date, id);
+        overflow.remove(key);
+
+        if (fitColumn(purchaseColumns[id], purchaseReductions[id], purchaseScales, id, rate.getPurchaseRate()) &&
+                fitColumn(sellingColumns[id], sellingReductions[id], sellingScales, id, rate.getSellingRate())) {
+            BigDecimal purchase = rate.getPurchaseRate();
+            BigDecimal selling = rate.getSellingRate();
+            int purchaseReduction = purchaseScales[id] - purchase.scale();
+            int sellingReduction = sellingScales[id] - selling.scale();
+
+            purchaseColumns[id][ordinal] = purchase.unscaledValue().longValue() * POWERS_OF_TEN[purchaseReduction];
+            sellingColumns[id][ordinal] = selling.unscaledValue().longValue() * POWERS_OF_TEN[sellingReduction];
+            purchaseReductions[id][ordinal] = (byte) purchaseReduction;
+            sellingReductions[id][ordinal] = (byte) sellingReduction;
+        } else {
+            purchaseColumns[id][ordinal] = OVERFLOW;
+            overflow.put(key, rate);
+        }
+    }
+
+    /**
+     * Makes the column able to hold the value: raises the scale of the column if the value has a larger one.
+     * Returns false if the value or the rescaled column doesn't fit into longs, the column is unchanged then.
+     */
+    private static boolean fitColumn(long[] column, byte[] reductions, int[] scales, int id, BigDecimal value) {
+        if (value.unscaledValue().bitLength() >= Long.SIZE) return false;
+
+        int raise = value.scale() - scales[id];
+        if (raise <= 0) {
+            return -raise <= MAX_SCALE_REDUCTION &&
+                    fitsMultiplication(value.unscaledValue().longValue(), POWERS_OF_TEN[-raise]);
+        }
+        if (raise > MAX_SCALE_REDUCTION) return false;
+
+        for (int ordinal = 0; ordinal < column.length; ordinal++) {
+            if (column[ordinal] == ABSENT || column[ordinal] == OVERFLOW) continue;
+            if (reductions[ordinal] + raise > MAX_SCALE_REDUCTION ||
+                    !fitsMultiplication(column[ordinal], POWERS_OF_TEN[raise]))
+                return false;
+        }
+
+        for (int ordinal = 0; ordinal < column.length; ordinal++) {
+            if (column[ordinal] == ABSENT || column[ordinal] == OVERFLOW) continue;
+            column[ordinal] *= POWERS_OF_TEN[raise];
+            reductions[ordinal] += (byte) raise;
+        }
+        scales[id] = value.scale();
+
+        return true;
+    }
+
+    private static boolean fitsMultiplication(long value, long factor) {
+        return value <= Long.MAX_VALUE / factor;
+    }
+
+    /** Extends the columns to the date, the range grows by a quarter at least. Must be called under the write lock */
+    private void ensureCapacity(LocalDate date) {
+        if (inRange(date)) return;
+
+        long epochDay = date.toEpochDay();
+        if (capacity == 0) {
+            firstEpochDay = epochDay;
+            resize(epochDay, MIN_GROWTH_DAYS);
+            return;
+        }
+
+        long growth = Math.max(MIN_GROWTH_DAYS, capacity / 4);
+        long newFirst = epochDay < firstEpochDay ? epochDay - growth : firstEpochDay;
+        long lastEpochDay = firstEpochDay + capacity - 1;
+        long newLast = epochDay > lastEpochDay ? epochDay + growth : lastEpochDay;
+
+        resize(newFirst, Math.toIntExact(newLast - newFirst + 1));
+    }
+
+    private void resize(long newFirstEpochDay, int newCapacity) {
+        int shift = (int) (firstEpochDay - newFirstEpochDay);
+
+        for (int id = 0; id < purchaseColumns.length; id++) {
+            if (purchaseColumns[id] == null) continue;
+
+            purchaseColumns[id] = moved(purchaseColumns[id], shift, newCapacity);
+            sellingColumns[id] = moved(sellingColumns[id], shift, newCapacity);
+            purchaseReductions[id] = moved(purchaseReductions[id], shift, newCapacity);
+            sellingReductions[id] = moved(sellingReductions[id], shift, newCapacity);
+        }
+
+        versions = moved(versions, shift, newCapacity);
+
+        BitSet movedDays = new BitSet(newCapacity);
+        for (int ordinal = storedDays.nextSetBit(0); ordinal >= 0; ordinal = storedDays.nextSetBit(ordinal + 1))
+            movedDays.set(ordinal + shift);
+
+        storedDays = movedDays;
+        firstEpochDay = newFirstEpochDay;
+        capacity = newCapacity;
+    }
+
+    private static long[] moved(long[] column, int shift, int newCapacity) {
+        long[] movedColumn = new long[newCapacity];
+        System.arraycopy(column, 0, movedColumn, shift, column.length);
+        return movedColumn;
+    }
+
+    private static byte[] moved(byte[] column, int shift, int newCapacity) {
+        byte[] movedColumn = new byte[newCapacity];
+        System.arraycopy(column, 0, movedColumn, shift, column.length);
+        return movedColumn;
+    }
+}
@@ -0,0 +1,253 @@
+package repository;
+
+import exceptions.CurrencyDataException;
+import model.CurrencyRate;
+import model.LocalCurrency;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Day table compiled for exchange: selling and purchase rates in arrays indexed by CurrencyIndex id.
+ * A pair isn't reduced to one factor, because the exchange rounds the division to 10 digits
+ * and a precomputed quotient would change the result.
+ */
+final class CrossRateTable {
+
+    /** Scale of a rate that doesn't fit into long, such rates are exchanged with BigDecimal */
+    private final static int NO_FIXED_POINT = Integer.MIN_VALUE;
+
+    private final BigDecimal[] sellingRates = new BigDecimal[CurrencyIndex.size()];
+    private final BigDecimal[] purchaseRates = new BigDecimal[CurrencyIndex.size()];
+
+    /** Exchange on unscaled long values instead of BigDecimal */
+    private final boolean fixedPoint;
+
+    private final long[] sellingUnscaled;
+    private final int[] sellingScales;
+    private final long[] purchaseUnscaled;
+    private final int[] purchaseScales;
+
+    CrossRateTable(Map<String, CurrencyRate> currencyRateMap) {
+        this(currencyRateMap, false);
+    }
+
+    CrossRateTable(Map<String, CurrencyRate> currencyRateMap, boolean fixedPoint) {
+        this.fixedPoint = fixedPoint;
+        this.sellingUnscaled = fixedPoint ? new long[CurrencyIndex.size()] : null;
+        this.sellingScales = fixedPoint ? new int[CurrencyIndex.size()] : null;
+        this.purchaseUnscaled = fixedPoint ? new long[CurrencyIndex.size()] : null;
+        this.purchaseScales = fixedPoint ? new int[CurrencyIndex.size()] : null;
+
+        for (CurrencyRate rate : currencyRateMap.values()) {
+            int id = CurrencyIndex.idOf(rate.getCurrency());
+            if (id < 0) continue;
+
+            sellingRates[id] = rate.getSellingRate();
+            purchaseRates[id] = rate.getPurchaseRate();
+
+            if (fixedPoint) {
+                sellingScales[id] = fitsLong(rate.getSellingRate()) ? rate.getSellingRate().scale() : NO_FIXED_POINT;
+                sellingUnscaled[id] = sellingScales[id] == NO_FIXED_POINT ? 0 : rate.getSellingRate().unscaledValue().longValue();
+                purchaseScales[id] = fitsLong(rate.getPurchaseRate()) ? rate.getPurchaseRate().scale() : NO_FIXED_POINT;
+                purchaseUnscaled[id] = purchaseScales[id] == NO_FIXED_POINT ? 0 : rate.getPurchaseRate().unscaledValue().longValue();
+            }
+        }
+    }
+
+    private static boolean fitsLong(BigDecimal value) {
+        return value.unscaledValue().bitLength() < Long.SIZE;
+    }
+
+    /**
+     * Exchanges the amount with the rules of DataStoreRep.exchange: sells fromCurrency for the local currency
+     * and buys targetCurrency for it, the division is rounded HALF_UP to 10 digits.
+     * Throws: CurrencyDataException - when currencies don't exist in the day table
+     */
+    BigDecimal exchange(BigDecimal amount, Currency fromCurrency, Currency targetCurrency, LocalCurrency localCurrency) {
+
+        if (amount.compareTo(BigDecimal.ZERO) == 0)
+            return BigDecimal.ZERO;
+
+        if (fromCurrency.equals(targetCurrency))
+            return amount;
+
+        int fromId = CurrencyIndex.idOf(fromCurrency);
+        int targetId = CurrencyIndex.idOf(targetCurrency);
+        if (fromId < 0 || targetId < 0 || sellingRates[fromId] == null || sellingRates[targetId] == null)
+            throw new CurrencyDataException("Данные о курсе валюты отсутствуют");
+
+        boolean fromLocal = fromCurrency.equals(localCurrency.getLocalCurrency());
+        boolean targetLocal = targetCurrency.equals(localCurrency.getLocalCurrency());
+
+        if (fixedPoint && fitsLong(amount)) {
+            try {
+                return exchangeFixedPoint(amount.unscaledValue().longValue(), amount.scale(), fromId, targetId,
+                        fromLocal, targetLocal);
+            } catch (ArithmeticException ignored) {
+                // overflow, the exchange is done with BigDecimal
+            }
+        }
+
+        if (fromLocal)
+            return amount.divide(purchaseRates[targetId], 10, RoundingMode.HALF_UP);
+
+        BigDecimal baseCurrency = amount.multiply(sellingRates[fromId]);
+
+        if (targetLocal)
+            return baseCurrency;
+
+        return baseCurrency.divide(purchaseRates[targetId], 10, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Exchanges the amount into every currency of the day table with the same rules and results as exchange.
+     * The amount in the local currency is computed once for all target currencies.
+     * Returns results by target currency in the order of currency codes
+     * Throws: CurrencyDataException - when fromCurrency doesn't exist in the day table
+     */
+    Map<Currency, BigDecimal> quote(BigDecimal amount, Currency fromCurrency, LocalCurrency localCurrency) {
+        Map<Currency, BigDecimal> quotes = new LinkedHashMap<>();
+
+        boolean zeroAmount = amount.compareTo(BigDecimal.ZERO) == 0;
+        int fromId = CurrencyIndex.idOf(fromCurrency);
+        boolean fromListed = fromId >= 0 && sellingRates[fromId] != null;
+        boolean fromLocal = fromCurrency.equals(localCurrency.getLocalCurrency());
+
+        boolean amountFixedPoint = fixedPoint && fitsLong(amount);
+        long amountUnscaled = amountFixedPoint ? amount.unscaledValue().longValue() : 0;
+        int amountScale = amountFixedPoint ? amount.scale() : NO_FIXED_POINT;
+
+        BigDecimal baseCurrency = null;
+        long baseUnscaled = 0;
+        int baseScale = NO_FIXED_POINT;
+        if (!zeroAmount && fromListed && !fromLocal) {
+            baseCurrency = amount.multiply(sellingRates[fromId]);
+            if (amountFixedPoint && sellingScales[fromId] != NO_FIXED_POINT) {
+                try {
+                    baseUnscaled = FixedPointArithmetic.multiply(amountUnscaled, sellingUnscaled[fromId]);
+                    baseScale = Math.addExact(amountScale, sellingScales[fromId]);
+                } catch (ArithmeticException ignored) {
+                    // overflow, the exchange is done with BigDecimal
+                    baseScale = NO_FIXED_POINT;
+                }
+            }
+        }
+
+        for (int targetId = 0; targetId < sellingRates.length; targetId++) {
+            if (sellingRates[targetId] == null) continue;
+            Currency targetCurrency = CurrencyIndex.currencyOf(targetId);
+
+            if (zeroAmount) {
+                quotes.put(targetCurrency, BigDecimal.ZERO);
+            } else if (targetCurrency.equals(fromCurrency)) {
+                quotes.put(targetCurrency, amount);
+            } else if (!fromListed) {
+                throw new CurrencyDataException("Данные о курсе валюты отсутствуют");
+            } else if (fromLocal) {
+                quotes.put(targetCurrency, divideByPurchase(amount, amountUnscaled, amountScale, targetId));
+            } else if (targetCurrency.equals(localCurrency.getLocalCurrency())) {
+                quotes.put(targetCurrency, baseScale == NO_FIXED_POINT ? baseCurrency : BigDecimal.valueOf(baseUnscaled, baseScale));
+            } else {
+                quotes.put(targetCurrency, divideByPurchase(baseCurrency, baseUnscaled, baseScale, targetId));
+            }
+        }
+
+        return quotes;
+    }
+
+    /**
+     * Exchanges every holding into the local currency with the same rules and results as exchange and sums them.
+     * The local currency has no row, its amounts are added as they are, other currencies are sold at their rates.
+     * Returns the total or null if a rate of a foreign currency with a non-zero amount doesn't exist in the day table
+     * Params: holdings - amounts by currency
+     */
+    BigDecimal value(Map<Currency, BigDecimal> holdings, LocalCurrency localCurrency) {
+        Currency local = localCurrency.getLocalCurrency();
+        BigDecimal total = BigDecimal.ZERO;
+
+        for (Map.Entry<Currency, BigDecimal> holding : holdings.entrySet()) {
+            BigDecimal amount = holding.getValue();
+            if (amount.signum() == 0) continue;
+
+            if (holding.getKey().equals(local)) {
+                total = total.add(amount);
+                continue;
+            }
+
+            int id = CurrencyIndex.idOf(holding.getKey());
+            if (id < 0 || sellingRates[id] == null)
+                return null;
+
+            total = total.add(sell(amount, id));
+        }
+
+        return total;
+    }
+
+    /** Exchanges the amount into the local currency at the selling rate, on unscaled long values if they fit */
+    private BigDecimal sell(BigDecimal amount, int id) {
+        if (fixedPoint && fitsLong(amount) && sellingScales[id] != NO_FIXED_POINT) {
+            try {
+                return BigDecimal.valueOf(FixedPointArithmetic.multiply(amount.unscaledValue().longValue(), sellingUnscaled[id]),
+                        Math.addExact(amount.scale(), sellingScales[id]));
+            } catch (ArithmeticException ignored) {
+                // overflow, the exchange is done with BigDecimal
+            }
+        }
+
+        return amount.multiply(sellingRates[id]);
+    }
+
+    /**
+     * Divides the value by the purchase rate of the target currency, on unscaled long values if they fit.
+     * Params: value - dividend
+     *         unscaled - unscaled dividend
+     *         scale - scale of the unscaled dividend or NO_FIXED_POINT if it doesn't fit into long
+     *         targetId - id of the target currency
+     */
+    private BigDecimal divideByPurchase(BigDecimal value, long unscaled, int scale, int targetId) {
+        if (scale != NO_FIXED_POINT && purchaseScales[targetId] != NO_FIXED_POINT) {
+            try {
+                return BigDecimal.valueOf(FixedPointArithmetic.divide(unscaled, scale, purchaseUnscaled[targetId],
+                        purchaseScales[targetId]), FixedPointArithmetic.DIVISION_SCALE);
+            } catch (ArithmeticException ignored) {
+                // overflow, the exchange is done with BigDecimal
+            }
+        }
+
+        return value.divide(purchaseRates[targetId], 10, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Same exchange on unscaled long values.
+     * Throws: ArithmeticException - on overflow or if a rate doesn't fit into long
+     */
+    private BigDecimal exchangeFixedPoint(long amount, int amountScale, int fromId, int targetId,
+                                          boolean fromLocal, boolean targetLocal) {
+        if (fromLocal) {
+            requireFixedPoint(purchaseScales[targetId]);
+            return BigDecimal.valueOf(FixedPointArithmetic.divide(amount, amountScale, purchaseUnscaled[targetId],
+                    purchaseScales[targetId]), FixedPointArithmetic.DIVISION_SCALE);
+        }
+
+        requireFixedPoint(sellingScales[fromId]);
+        long baseCurrency = FixedPointArithmetic.multiply(amount, sellingUnscaled[fromId]);
+        int baseScale = Math.addExact(amountScale, sellingScales[fromId]);
+
+        if (targetLocal)
+            return BigDecimal.valueOf(baseCurrency, baseScale);
+
+        requireFixedPoint(purchaseScales[targetId]);
+        return BigDecimal.valueOf(FixedPointArithmetic.divide(baseCurrency, baseScale, purchaseUnscaled[targetId],
+                purchaseScales[targetId]), FixedPointArithmetic.DIVISION_SCALE);
+    }
+
+    private static void requireFixedPoint(int scale) {
+        if (scale == NO_FIXED_POINT)
+            throw new ArithmeticException("Rate doesn't fit into long");
+    }
+}
@@ -0,0 +1,44 @@
+package repository;
+
+import java.util.*;
+
+/**
+ * Dense numbering of the currencies available in java.util.Currency,
+ * so per-currency data can be kept in arrays instead of maps.
+ */
+public final class CurrencyIndex {
+
+    /** Currencies by id, sorted by ISO code */
+    private final static Currency[] CURRENCIES;
+
+    /** Ids by currency */
+    private final static Map<Currency, Integer> IDS = new HashMap<>();
+
+    static {
+        List<Currency> currencies = new ArrayList<>(Currency.getAvailableCurrencies());
+        currencies.sort(Comparator.comparing(Currency::getCurrencyCode));
+
+        CURRENCIES = currencies.toArray(new Currency[0]);
+        for (int id = 0; id < CURRENCIES.length; id++)
+            IDS.put(CURRENCIES[id], id);
+    }
+
+    private CurrencyIndex() {
+    }
+
+    /** Returns the number of known currencies */
+    public static int size() {
+        return CURRENCIES.length;
+    }
+
+    /** Returns the id of the currency or -1 if it is unknown */
+    public static int idOf(Currency currency) {
+        Integer id = IDS.get(currency);
+        return id == null ? -1 : id;
+    }
+
+    /** Returns the currency with a specific id */
+    public static Currency currencyOf(int id) {
+        return CURRENCIES[id];
+    }
+}
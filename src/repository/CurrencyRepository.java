@@ -2,116 +2,762 @@ package repository;
 
 import config.RepositoryConfiguration;
 import exceptions.CurrencyDataException;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
 import model.CurrencyRate;
 import model.LocalCurrency;
+import model.RateSnapshot;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
 
-public class CurrencyRepository implements DataStoreRep {
+public class CurrencyRepository implements DataStoreRep, AutoCloseable {
 
     /** Config contains properties of CurrencyRepository */
     private final RepositoryConfiguration config;
 
+    /** Extension of the day file that stores the rates of a date at the last compaction */
+    private final static String SNAPSHOT_EXTENSION = ".csv";
+
+    /** Extension of the change log that stores updates of a date since the last compaction */
+    private final static String LOG_EXTENSION = ".log";
+
+    /** Size of the change log after which it is compacted into the snapshot file */
+    private final static long LOG_COMPACTION_THRESHOLD_BYTES = 16 * 1024;
+
+    /** Bytes read at a time from the end of a change log when looking for its last complete line */
+    private final static int LOG_TAIL_BUFFER_SIZE = 256;
+
+    /** Extension of the temporary file a snapshot is written to before it replaces the day file */
+    private final static String TEMP_EXTENSION = ".tmp";
+
+    /** Name of the file whose byte ranges are locked by writers of other processes */
+    private final static String LOCK_FILE_NAME = ".rates.lock";
+
+    /** Number of lock-free attempts to read consistent files of a date before the read takes the lock */
+    private final static int OPTIMISTIC_READ_ATTEMPTS = 8;
+
+    /** Parsed day tables, so repeated reads of the same date don't touch the file */
+    private final RateCache cache;
+
+    /** Locks of dates held by writers */
+    private final DateLocks locks;
+
+    /** Time of parsing the files of one date, without reading them */
+    private final static LatencyHistogram PARSE_TIMER = Metrics.timer("repository.parseDayFile");
+
+    private final static LongAdder BYTES_READ = Metrics.counter("repository.bytesRead");
+    private final static LongAdder BYTES_WRITTEN = Metrics.counter("repository.bytesWritten");
+
+    /** Dates that have a day file, a change log or are packed into a segment, reads of other dates don't touch the filesystem */
+    private final NavigableSet<LocalDate> dates;
+
+    /** Time without file events of a date after which the date is reloaded */
+    private final static long WATCH_QUIET_PERIOD_MILLIS = 100;
+
+    /** Reloads of dates triggered by file events */
+    private final static LongAdder RELOADS = Metrics.counter("repository.watchReloads");
+
+    /** Watcher of the data store directory, null if the directory isn't watched */
+    private DirectoryWatcher<LocalDate> watcher;
+
+    /** Opened archive segments by the first date of their range, ranges of segments don't intersect */
+    private final NavigableMap<LocalDate, ArchiveSegment> segments = new ConcurrentSkipListMap<>();
+
+    /** Guards opening of segments. Never held while the lock of a date is taken, and never taken under it */
+    private final Object segmentLock = new Object();
+
+    /** Serializes archiving, which takes the locks of the dates of its range */
+    private final Object archiveLock = new Object();
+
+    /** Day table of a date without files, its snapshot is replaced by one of the requested date */
+    private final static RateCache.DayTable EMPTY_DAY_TABLE = new RateCache.DayTable(
+            new RateSnapshot(LocalDate.EPOCH, RateSnapshot.UNVERSIONED, Map.of()), new CrossRateTable(Map.of()));
+
     public CurrencyRepository(RepositoryConfiguration config) {
         Objects.requireNonNull(config);
 
         this.config = config;
+        this.cache = new RateCache(config.getCacheCapacity(), config.isFixedPointArithmetic());
+        this.locks = new DateLocks(config.getPathToDataStore().resolve(LOCK_FILE_NAME));
+        this.dates = new ConcurrentSkipListSet<>(scanDates());
+    }
+
+    /** Returns the number of reads served from the cache */
+    public long getCacheHits() {
+        return cache.getHits();
+    }
+
+    /** Returns the number of reads that had to parse the day file */
+    public long getCacheMisses() {
+        return cache.getMisses();
+    }
+
+    /** Returns the path to the day file of a specific date */
+    private Path snapshotPath(LocalDate date) {
+        return config.getPathToDataStore().resolve(date + SNAPSHOT_EXTENSION);
+    }
+
+    /** Returns the path to the change log of a specific date */
+    private Path logPath(LocalDate date) {
+        return config.getPathToDataStore().resolve(date + LOG_EXTENSION);
+    }
+
+    /** Returns attributes of the file or null if it doesn't exist */
+    private static BasicFileAttributes readAttributesIfExists(Path filePath) throws IOException {
+        try {
+            return Files.readAttributes(filePath, BasicFileAttributes.class);
+        } catch (NoSuchFileException exception) {
+            return null;
+        }
     }
 
     /**
-     * Adds a file to a specific directory if this file doesn't exist.
+     * Writes currency rate map to the snapshot file with a specific date and deletes the change log of the date.
+     * The map is written to a temporary file that atomically replaces the snapshot, so a crash never leaves
+     * a truncated snapshot. Must be called under the lock of the date.
      * Params: date - date of exchange rate
-     * Throws: UncheckedIOException
+     *         currencyRateMap - map of currency rates on a specific date
+     * Throws: IOException
      */
-    private Path createFullPath(LocalDate date) {
-        Path filePath;
+    private void putExchangeRateMap(LocalDate date, Map<String, CurrencyRate> currencyRateMap) throws IOException {
+
+        StringBuilder csvLines = new StringBuilder();
+
+        for (Map.Entry<String, CurrencyRate> entry : currencyRateMap.entrySet()) {
+            appendCsvLine(csvLines, entry.getValue());
+        }
+
+        Path filePath = snapshotPath(date);
+        Path tempPath = filePath.resolveSibling(filePath.getFileName() + TEMP_EXTENSION);
+
         try {
-            String fileName = date + ".csv";
-            filePath = config.getPathToDataStore().resolve(fileName);
+            try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer content = ByteBuffer.wrap(csvLines.toString().getBytes(StandardCharsets.UTF_8));
+                while (content.hasRemaining()) channel.write(content);
+                channel.force(true);
+                if (Metrics.enabled()) BYTES_WRITTEN.add(content.capacity());
+            }
 
-            if (Files.notExists(filePath)) Files.createFile(filePath);
-        } catch (IOException ex) {
-            throw new UncheckedIOException(ex);
+            Files.move(tempPath, filePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            dates.add(date);
+            Files.deleteIfExists(logPath(date));
+
+            BasicFileAttributes attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+            cache.put(date, RateCache.FileStamp.of(attributes, null), currencyRateMap);
+        } catch (IOException exception) {
+            cache.invalidate(date);
+            Files.deleteIfExists(tempPath);
+            throw exception;
         }
-        return filePath;
+    }
+
+    /** Appends the rate as a line of a day file or a change log */
+    private static void appendCsvLine(StringBuilder sb, CurrencyRate rate) {
+        sb.append(rate.getCurrency()).append(", ")
+                .append(rate.getPurchaseRate()).append(", ")
+                .append(rate.getSellingRate()).append('\n');
     }
 
     /**
-     * Adds currency rate map to a file with a specific date.
+     * Appends records to the change log of a specific date. When the log grows over the threshold
+     * it is compacted into the snapshot file. Must be called under the lock of the date.
+     * A last line without '\n' is a record torn by a crash, which the replay ignores. It is cut off before
+     * the records are appended, otherwise the first record would continue it and the log would become malformed.
      * Params: date - date of exchange rate
-     *         currencyRateMap - map of currency rates on a specific date
-     * Throws: UncheckedIOException
+     *         records - lines of the log
+     *         currencyRateMap - map of currency rates after the records are applied
+     * Throws: IOException
      */
-    private void putExchangeRateMap(LocalDate date, Map<String, CurrencyRate> currencyRateMap) {
+    private void appendLog(LocalDate date, String records, Map<String, CurrencyRate> currencyRateMap) throws IOException {
+        try {
+            Path logPath = logPath(date);
+            appendToLog(logPath, records.getBytes(StandardCharsets.UTF_8));
 
-        List<String> csvLines = new ArrayList<>();
+            dates.add(date);
 
-        for (Map.Entry<String, CurrencyRate> entry : currencyRateMap.entrySet()) {
-            CurrencyRate rate = entry.getValue();
-            String csvLine = String.join(", ",
-                String.valueOf(rate.getCurrency()),
-                String.valueOf(rate.getPurchaseRate()),
-                String.valueOf(rate.getSellingRate())
-            );
-            csvLines.add(csvLine);
+            BasicFileAttributes logAttributes = Files.readAttributes(logPath, BasicFileAttributes.class);
+            if (logAttributes.size() >= LOG_COMPACTION_THRESHOLD_BYTES) {
+                putExchangeRateMap(date, currencyRateMap);
+                return;
+            }
+
+            BasicFileAttributes attributes = readAttributesIfExists(snapshotPath(date));
+            cache.put(date, RateCache.FileStamp.of(attributes, logAttributes), currencyRateMap);
+        } catch (IOException exception) {
+            cache.invalidate(date);
+            throw exception;
         }
+    }
 
+    /**
+     * Cuts off the unterminated last line of the log, if it has one, and writes the bytes after its last complete line.
+     * The bytes are forced to the device like the snapshot files, so an acknowledged change survives a crash
+     */
+    private static void appendToLog(Path logPath, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long position = completeLength(channel);
+            if (position < channel.size()) channel.truncate(position);
+
+            ByteBuffer content = ByteBuffer.wrap(bytes);
+            while (content.hasRemaining()) position += channel.write(content, position);
+            channel.force(false);
+        }
+        if (Metrics.enabled()) BYTES_WRITTEN.add(bytes.length);
+    }
+
+    /** Returns the length of the log up to and including its last '\n', or 0 if it has no complete line */
+    private static long completeLength(FileChannel channel) throws IOException {
+        ByteBuffer tail = ByteBuffer.allocate(LOG_TAIL_BUFFER_SIZE);
+
+        for (long end = channel.size(); end > 0; ) {
+            long start = Math.max(0, end - tail.capacity());
+            tail.clear().limit((int) (end - start));
+            while (tail.hasRemaining()) {
+                if (channel.read(tail, start + tail.position()) < 0) break;
+            }
+
+            for (int i = tail.position() - 1; i >= 0; i--) {
+                if (tail.get(i) == '\n') return start + i + 1;
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    /**
+     * Rewrites the snapshot file of a specific date with the records of its change log and deletes the log.
+     * Params: date - date of exchange rate
+     * Throws: UncheckedIOException
+     */
+    public void compact(LocalDate date) {
         try {
-            Files.write(createFullPath(date), csvLines, StandardCharsets.UTF_8);
+            withDayTable(date, dayTable -> {
+                if (Files.exists(logPath(date)))
+                    putExchangeRateMap(date, dayTable.currencyRateMap());
+                return null;
+            });
         } catch (IOException exception) {
             throw new UncheckedIOException(exception);
         }
     }
 
     /**
-     * Returns map of CurrencyRates from file.
+     * Returns the unmodifiable map of CurrencyRates of the published snapshot, without copying it.
      * Params: date - date of exchange rate
      * Throws: UncheckedIOException
      */
     @Override
     public Map<String, CurrencyRate> getCurrencyRateMap(LocalDate date) {
-        List<String> csvLines;
+        return loadDayTable(date).currencyRateMap();
+    }
+
+    /**
+     * Returns the snapshot from the cache or from files, if the files have been changed since they were cached.
+     * A cached snapshot is returned without locks and copies, a date without files has an empty unversioned snapshot.
+     * Params: date - date of exchange rate
+     * Throws: UncheckedIOException
+     */
+    @Override
+    public RateSnapshot getSnapshot(LocalDate date) {
+        RateCache.DayTable dayTable = loadDayTable(date);
+
+        return dayTable == EMPTY_DAY_TABLE ? new RateSnapshot(date, RateSnapshot.UNVERSIONED, Map.of()) : dayTable.snapshot();
+    }
+
+    /**
+     * Returns the rate of one currency on a specific date without copying the day table, or null if it is absent.
+     * Params: date - date of exchange rate
+     *         currency - currency in ISO format
+     * Throws: UncheckedIOException
+     */
+    @Override
+    public CurrencyRate getCurrencyRate(LocalDate date, Currency currency) {
+        return loadDayTable(date).currencyRateMap().get(currency.getCurrencyCode());
+    }
+
+    /**
+     * Returns the day table from the cache or parses the snapshot file and replays the change log,
+     * if the files have been changed since they were cached. A date absent in the index has an empty table.
+     * Reads don't take the lock: the files are read again if a writer changed them during the read,
+     * and only after several failed attempts the read waits for the lock of the date.
+     * Params: date - date of exchange rate
+     * Throws: UncheckedIOException
+     *         CurrencyDataException - if a line of the files is malformed
+     */
+    private RateCache.DayTable loadDayTable(LocalDate date) {
+        if (!dates.contains(date)) return EMPTY_DAY_TABLE;
 
         try {
-            csvLines = Files.readAllLines(createFullPath(date), StandardCharsets.UTF_8);
+            boolean segmentsOpened = false;
+            for (int attempt = 0; attempt < OPTIMISTIC_READ_ATTEMPTS; attempt++) {
+                try {
+                    RateCache.DayTable dayTable = tryReadDayTable(date, segmentsOpened);
+                    if (dayTable != null) return dayTable;
+                } catch (UnopenedSegmentException exception) {
+                    openSegments();
+                    segmentsOpened = true;
+                }
+            }
+
+            return withDayTable(date, dayTable -> dayTable);
         } catch (IOException exception) {
             throw new UncheckedIOException(exception);
         }
+    }
 
-        Map<String, CurrencyRate> currencyRateMap = new HashMap<>();
+    /**
+     * Reads the day table under the lock of the date and runs the action with it.
+     * Segments aren't opened under the lock: if the date has neither files nor an opened segment, for example
+     * because another process packed it while the lock was awaited, the lock is released, the segments
+     * are opened and the action runs again.
+     * Throws: IOException - if the action or the read fails
+     */
+    private <T> T withDayTable(LocalDate date, DayTableAction<T> action) throws IOException {
+        try {
+            return locks.withLock(date, () -> action.run(readDayTable(date, false)));
+        } catch (UnopenedSegmentException exception) {
+            openSegments();
+            return locks.withLock(date, () -> action.run(readDayTable(date, true)));
+        }
+    }
+
+    /**
+     * Reads the day table. Must be called under the lock of the date.
+     * Params: segmentsOpened - if the segments have been opened after the lock was awaited
+     * Throws: IOException
+     *         UnopenedSegmentException - if the date may be packed into a segment that isn't opened yet
+     */
+    private RateCache.DayTable readDayTable(LocalDate date, boolean segmentsOpened) throws IOException {
+        RateCache.DayTable dayTable = tryReadDayTable(date, segmentsOpened);
+        if (dayTable == null)
+            throw new IOException("Files of " + date + " are changed by a writer that doesn't hold the lock");
+
+        return dayTable;
+    }
+
+    /**
+     * Reads the day table from the cache or from files. Returns null if the files have been changed during the read.
+     * Params: segmentsOpened - if the segments have been opened since the date was found without files
+     * Throws: IOException
+     *         UnopenedSegmentException - if the date has no files, no opened segment packs it
+     *         and segmentsOpened is false
+     */
+    private RateCache.DayTable tryReadDayTable(LocalDate date, boolean segmentsOpened) throws IOException {
+        Path filePath = snapshotPath(date);
+        Path logPath = logPath(date);
 
-        for (String csvLine : csvLines) {
-            String[] parts = csvLine.split(", ");
-            currencyRateMap.put(parts[0], new CurrencyRate(
-                             Currency.getInstance(parts[0]),
-                             new BigDecimal(parts[1]),
-                             new BigDecimal(parts[2])
-            ));
+        RateCache.FileStamp stamp = readStamp(filePath, logPath);
+        RateCache.DayTable cachedTable = cache.get(date, stamp);
+        if (cachedTable != null) return cachedTable;
+
+        // drawn before the files are read: a writer replacing them publishes its table with a greater version
+        long version = RateSnapshot.nextVersion();
+
+        byte[] snapshot = null;
+        byte[] log = null;
+        try {
+            if (stamp.snapshotModified() != null) snapshot = readFile(filePath);
+            if (stamp.logModified() != null) log = readFile(logPath);
+        } catch (NoSuchFileException exception) {
+            return null;
+        }
+
+        // Without a snapshot the packed day file of the segment is the base the change log is replayed on
+        ArchiveSegment segment = null;
+        byte[] packed = null;
+        if (snapshot == null) {
+            segment = segmentOf(date);
+            // the files may have been packed by another process, the caller opens new segments without locks
+            if (segment == null && log == null && !segmentsOpened) throw new UnopenedSegmentException();
+            if (segment != null) packed = segment.read(date);
         }
 
-        return currencyRateMap;
+        long parseStart = Metrics.enabled() ? System.nanoTime() : 0;
+        Map<String, CurrencyRate> currencyRateMap;
+        if (snapshot != null)
+            currencyRateMap = DayFileParser.parse(snapshot, filePath.getFileName().toString());
+        else if (packed != null)
+            currencyRateMap = DayFileParser.parse(packed, segment.getPath().getFileName() + ":" + date);
+        else
+            currencyRateMap = new HashMap<>();
+        if (log != null) DayFileParser.replayLog(log, logPath.getFileName().toString(), currencyRateMap);
+        if (Metrics.enabled()) PARSE_TIMER.recordSince(parseStart);
+
+        if (!stamp.equals(readStamp(filePath, logPath))) return null;
+
+        return cache.put(date, stamp, currencyRateMap, version);
+    }
+
+    /** Reads the whole file and counts the bytes read */
+    private static byte[] readFile(Path path) throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        if (Metrics.enabled()) BYTES_READ.add(bytes.length);
+
+        return bytes;
+    }
+
+    /** Returns the modification times and sizes of the snapshot file and the change log, absent files included */
+    private static RateCache.FileStamp readStamp(Path filePath, Path logPath) throws IOException {
+        return RateCache.FileStamp.of(readAttributesIfExists(filePath), readAttributesIfExists(logPath));
+    }
+
+    /** Returns the segment that packs the date or null if the date isn't archived */
+    private ArchiveSegment segmentOf(LocalDate date) {
+        Map.Entry<LocalDate, ArchiveSegment> entry = segments.floorEntry(date);
+        return entry != null && entry.getValue().contains(date) ? entry.getValue() : null;
     }
 
     /**
-     * Adds currency rate to map. If the rate already exists, it'll be overwritten
+     * Opens the segment files of the data store directory that aren't opened yet.
+     * Must not be called under the lock of a date.
+     * Throws: IOException
+     *         CurrencyDataException - if a segment has an unknown format or its index is damaged
+     */
+    private void openSegments() throws IOException {
+        synchronized (segmentLock) {
+            Set<Path> opened = new HashSet<>();
+            for (ArchiveSegment segment : segments.values()) opened.add(segment.getPath());
+
+            List<Path> segmentFiles;
+            try (Stream<Path> files = Files.list(config.getPathToDataStore())) {
+                segmentFiles = files.filter(file -> file.getFileName().toString().endsWith(ArchiveSegment.EXTENSION)).toList();
+            }
+
+            for (Path file : segmentFiles) {
+                if (opened.contains(file)) continue;
+
+                putSegment(ArchiveSegment.open(file));
+            }
+        }
+    }
+
+    /**
+     * Adds an opened segment and closes the segment of the same first date it replaces.
+     * Must be called under the segment lock.
+     * Throws: IOException - if the replaced segment can't be closed
+     */
+    private void putSegment(ArchiveSegment segment) throws IOException {
+        ArchiveSegment replaced = segments.put(segment.getFrom(), segment);
+        if (replaced != null && replaced != segment) replaced.close();
+    }
+
+    /**
+     * Returns dates of all day files, change logs and segments in the data store directory.
+     * Throws: UncheckedIOException
+     */
+    private SortedSet<LocalDate> scanDates() {
+        SortedSet<LocalDate> scannedDates = new TreeSet<>();
+
+        try (Stream<Path> files = Files.list(config.getPathToDataStore())) {
+            openSegments();
+            for (ArchiveSegment segment : segments.values()) scannedDates.addAll(segment.getDates());
+
+            files.forEach(file -> {
+                LocalDate date = dateOf(file.getFileName());
+                if (date != null) scannedDates.add(date);
+            });
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+
+        return scannedDates;
+    }
+
+    /** Returns the date of a day file or a change log, or null if the file is neither */
+    private static LocalDate dateOf(Path fileName) {
+        String name = fileName.toString();
+        int extension = name.lastIndexOf('.');
+        if (extension < 0) return null;
+
+        String suffix = name.substring(extension);
+        if (!suffix.equals(SNAPSHOT_EXTENSION) && !suffix.equals(LOG_EXTENSION)) return null;
+
+        try {
+            return LocalDate.parse(name.substring(0, extension));
+        } catch (DateTimeParseException exception) {
+            return null;
+        }
+    }
+
+    /**
+     * Starts watching the data store directory, so day files and change logs created, changed or deleted
+     * by other processes become visible without scanning the directory. Events of a date are debounced:
+     * after a burst of writes the index entry of the date is updated and its day table is reloaded once.
+     * Reads keep validating the cached tables, so they are never stale while an event waits.
+     * Throws: UncheckedIOException
+     */
+    public synchronized void startWatching() {
+        if (watcher != null) return;
+
+        try {
+            watcher = new DirectoryWatcher<>(config.getPathToDataStore(), WATCH_QUIET_PERIOD_MILLIS,
+                    CurrencyRepository::dateOf, this::reload, this::refreshDates);
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /**
+     * Stops watching the data store directory.
+     * Throws: UncheckedIOException
+     */
+    public synchronized void stopWatching() {
+        if (watcher == null) return;
+
+        try {
+            watcher.close();
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        } finally {
+            watcher = null;
+        }
+    }
+
+    /**
+     * Stops watching the data store directory and closes the opened archive segments.
+     * The repository must not be used after it is closed.
+     * Throws: UncheckedIOException - if a segment can't be closed, the other segments are closed anyway
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            stopWatching();
+        } finally {
+            closeSegments();
+        }
+    }
+
+    /** Closes the opened archive segments, the first failure is thrown with the others suppressed */
+    private void closeSegments() {
+        synchronized (segmentLock) {
+            IOException failure = null;
+            for (ArchiveSegment segment : segments.values()) {
+                try {
+                    segment.close();
+                } catch (IOException exception) {
+                    if (failure == null) failure = exception;
+                    else failure.addSuppressed(exception);
+                }
+            }
+            segments.clear();
+
+            if (failure != null) throw new UncheckedIOException(failure);
+        }
+    }
+
+    /**
+     * Updates the index entry of a date whose files have been changed and reloads its day table.
+     * The date leaves the index only under its lock, so a concurrent writer can't lose its entry.
+     * Throws: UncheckedIOException
+     *         CurrencyDataException - if the changed files are malformed
+     */
+    private void reload(LocalDate date) {
+        if (Metrics.enabled()) RELOADS.increment();
+
+        try {
+            if (!hasData(date)) {
+                // segments aren't opened under the lock, a date packed meanwhile by another process
+                // is added back by the reload of the deletion of its files
+                locks.withLock(date, () -> {
+                    if (!hasOpenedData(date)) {
+                        dates.remove(date);
+                        cache.invalidate(date);
+                    }
+                    return null;
+                });
+                return;
+            }
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+
+        dates.add(date);
+        loadDayTable(date);
+    }
+
+    /**
+     * Returns true if the date has a day file, a change log or is packed into a segment.
+     * Must not be called under the lock of a date.
+     * Throws: IOException
+     */
+    private boolean hasData(LocalDate date) throws IOException {
+        if (hasOpenedData(date)) return true;
+
+        // the files may have been packed by another process
+        openSegments();
+        return segmentOf(date) != null;
+    }
+
+    /** Returns true if the date has a day file, a change log or is packed into an opened segment */
+    private boolean hasOpenedData(LocalDate date) {
+        return Files.exists(snapshotPath(date)) || Files.exists(logPath(date)) || segmentOf(date) != null;
+    }
+
+    /**
+     * Scans the data store directory again and updates the index of dates,
+     * so dates added or deleted by other processes become visible.
+     * Throws: UncheckedIOException
+     */
+    public void refreshDates() {
+        SortedSet<LocalDate> scannedDates = scanDates();
+
+        dates.addAll(scannedDates);
+        dates.retainAll(scannedDates);
+    }
+
+    /**
+     * Packs the rates of all dates of a closed range into one archive segment and deletes their day files
+     * and change logs, the dates are read from the segment afterwards. Files of a date changed by a writer
+     * while the segment is written are kept, they override the segment.
+     * Returns the number of packed dates.
+     * Params: from - first date of the range
+     *         to - last date of the range
+     * Throws: UncheckedIOException
+     *         CurrencyDataException - if the range is reversed or intersects the range of another segment
+     */
+    public int archive(LocalDate from, LocalDate to) {
+        if (from.isAfter(to))
+            throw new CurrencyDataException("Начальная дата диапазона позже конечной");
+
+        synchronized (archiveLock) {
+            return archiveRange(from, to);
+        }
+    }
+
+    /** Archives the range, must be called under the archive lock */
+    private int archiveRange(LocalDate from, LocalDate to) {
+        try {
+            openSegments();
+            for (ArchiveSegment segment : segments.values()) {
+                if (segment.overlaps(from, to))
+                    throw new CurrencyDataException("Диапазон дат пересекается с архивом " + segment.getPath().getFileName());
+            }
+
+            SortedMap<LocalDate, byte[]> dayFiles = new TreeMap<>();
+            Map<LocalDate, RateCache.FileStamp> stamps = new HashMap<>();
+            for (LocalDate date : new ArrayList<>(dates.subSet(from, true, to, true))) {
+                withDayTable(date, dayTable -> {
+                    Map<String, CurrencyRate> currencyRateMap = dayTable.currencyRateMap();
+                    stamps.put(date, readStamp(snapshotPath(date), logPath(date)));
+                    if (currencyRateMap.isEmpty()) return null;
+
+                    StringBuilder csvLines = new StringBuilder();
+                    for (CurrencyRate rate : currencyRateMap.values()) appendCsvLine(csvLines, rate);
+                    dayFiles.put(date, csvLines.toString().getBytes(StandardCharsets.UTF_8));
+                    return null;
+                });
+            }
+            if (dayFiles.isEmpty()) return 0;
+
+            Path segmentPath = config.getPathToDataStore().resolve(from + "_" + to + ArchiveSegment.EXTENSION);
+            ArchiveSegment.write(segmentPath, from, to, dayFiles);
+            synchronized (segmentLock) {
+                // a concurrent scan of the directory may have opened the written segment already
+                ArchiveSegment opened = segments.get(from);
+                if (opened == null || !opened.getPath().equals(segmentPath)) putSegment(ArchiveSegment.open(segmentPath));
+            }
+
+            for (Map.Entry<LocalDate, RateCache.FileStamp> entry : stamps.entrySet()) {
+                LocalDate date = entry.getKey();
+                locks.withLock(date, () -> {
+                    if (!entry.getValue().equals(readStamp(snapshotPath(date), logPath(date)))) return null;
+
+                    Files.deleteIfExists(snapshotPath(date));
+                    Files.deleteIfExists(logPath(date));
+                    cache.invalidate(date);
+                    if (!dayFiles.containsKey(date)) dates.remove(date);
+                    return null;
+                });
+            }
+
+            return dayFiles.size();
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /**
+     * Returns dates of all day files from the index without touching the filesystem.
+     */
+    @Override
+    public SortedSet<LocalDate> getDates() {
+        return Collections.unmodifiableSortedSet(dates);
+    }
+
+    @Override
+    public SortedSet<LocalDate> getDates(LocalDate from, LocalDate to) {
+        return Collections.unmodifiableSortedSet(dates.subSet(from, true, to, true));
+    }
+
+    @Override
+    public LocalDate getFloorDate(LocalDate date) {
+        return dates.floor(date);
+    }
+
+    /**
+     * Adds currency rate to the change log. If the rate already exists, it'll be overwritten
      * Params: date - date of exchange rate
      *         currencyRate - rate on a specific date
+     * Throws: UncheckedIOException
      */
     @Override
     public void putExchangeRate(LocalDate date, Map<String, CurrencyRate> currencyRate) {
+        if (currencyRate.isEmpty()) return;
+
+        StringBuilder records = new StringBuilder();
+        for (CurrencyRate rate : currencyRate.values()) {
+            appendCsvLine(records, rate);
+        }
+
+        try {
+            withDayTable(date, dayTable -> {
+                Map<String, CurrencyRate> currencyRateMap = new HashMap<>(dayTable.currencyRateMap());
+                currencyRateMap.putAll(currencyRate);
 
-        Map<String, CurrencyRate> currencyRateMap = getCurrencyRateMap(date);
-        currencyRateMap.putAll(currencyRate);
+                appendLog(date, records.toString(), currencyRateMap);
+                return null;
+            });
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
 
-        putExchangeRateMap(date, currencyRateMap);
+    /**
+     * Adds a removal record of the currency to the change log.
+     * Returns true if the currency has been deleted, and false if the currency doesn't exist
+     * Params: date - date of exchange rate
+     *         currency - currency to be deleted
+     * Throws: UncheckedIOException
+     */
+    @Override
+    public boolean removeExchangeRate(LocalDate date, String currency) {
+        try {
+            return withDayTable(date, dayTable -> {
+                Map<String, CurrencyRate> currencyRateMap = new HashMap<>(dayTable.currencyRateMap());
+                if (currencyRateMap.remove(currency) == null) return false;
+
+                appendLog(date, (char) DayFileParser.REMOVE_MARK + currency + '\n', currencyRateMap);
+                return true;
+            });
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
     }
 
     /**
@@ -131,26 +777,45 @@ public class CurrencyRepository implements DataStoreRep {
         
         if (fromCurrency.equals(targetCurrency))
             return amount;
-      
-        Map<String, CurrencyRate> exchangeRateMap = getCurrencyRateMap(date);
-        if (!exchangeRateMap.containsKey(fromCurrency.toString()) || !exchangeRateMap.containsKey(targetCurrency.toString()))
-            throw new CurrencyDataException("Данные о курсе валюты отсутствуют");
-        
-        BigDecimal purchaseRate;
-        
-        if (fromCurrency.equals(localCurrency.getLocalCurrency())) {
-            purchaseRate = exchangeRateMap.get(targetCurrency.toString()).getPurchaseRate();
-            return amount.divide(purchaseRate, 10, RoundingMode.HALF_UP);
-        }
 
-        BigDecimal sellingRate = exchangeRateMap.get(fromCurrency.toString()).getSellingRate();
-        BigDecimal baseCurrency = amount.multiply(sellingRate);
+        return loadDayTable(date).crossRates().exchange(amount, fromCurrency, targetCurrency, localCurrency);
+    }
+
+    /**
+     * Exchanges the amount into every currency of a specific date, the day table is loaded once.
+     * Throws: CurrencyDataException - when fromCurrency doesn't exist on a specific date
+     */
+    @Override
+    public Map<Currency, BigDecimal> quoteCurrency(LocalDate date, BigDecimal amount, Currency fromCurrency,
+                                                   LocalCurrency localCurrency) {
+        return loadDayTable(date).crossRates().quote(amount, fromCurrency, localCurrency);
+    }
+
+    /**
+     * Values holdings in the local currency on a specific date, the day table is loaded once for all holdings.
+     * Returns the total or null if a rate needed for the valuation doesn't exist on the date
+     */
+    @Override
+    public BigDecimal valueHoldings(LocalDate date, Map<Currency, BigDecimal> holdings, LocalCurrency localCurrency) {
+        return loadDayTable(date).crossRates().value(holdings, localCurrency);
+    }
+
+    /** Action performed with the day table of a date under the lock of the date */
+    @FunctionalInterface
+    private interface DayTableAction<T> {
+        T run(RateCache.DayTable dayTable) throws IOException;
+    }
 
-        if (targetCurrency.equals(localCurrency.getLocalCurrency()))
-            return baseCurrency;
+    /**
+     * Thrown by a read of a date that has neither files nor an opened segment, so the segments of the directory
+     * have to be opened first. Lets a read under the lock of the date release it before opening them.
+     */
+    private static final class UnopenedSegmentException extends IOException {
 
-        purchaseRate = exchangeRateMap.get(targetCurrency.toString()).getPurchaseRate();
+        private final static long serialVersionUID = 1L;
 
-        return baseCurrency.divide(purchaseRate, 10, RoundingMode.HALF_UP);
+        private UnopenedSegmentException() {
+            super("Segments have to be opened");
+        }
     }
 }
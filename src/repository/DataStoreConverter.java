@@ -0,0 +1,29 @@
+package repository;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+public final class DataStoreConverter {
+
+    private DataStoreConverter() {
+    }
+
+    /**
+     * Copies rates of all dates from one data store to another. Existing rates of the target are overwritten.
+     * Returns the number of copied dates.
+     * Params: source - data store to read
+     *         target - data store to write
+     */
+    public static int convert(DataStoreRep source, DataStoreRep target) {
+        Objects.requireNonNull(source);
+        Objects.requireNonNull(target);
+
+        int count = 0;
+        for (LocalDate date : source.getDates()) {
+            target.putExchangeRate(date, source.getCurrencyRateMap(date));
+            count++;
+        }
+
+        return count;
+    }
+}
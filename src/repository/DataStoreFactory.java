@@ -0,0 +1,35 @@
+package repository;
+
+import config.RepositoryConfiguration;
+import config.StorageType;
+
+import java.util.Objects;
+
+public final class DataStoreFactory {
+
+    private DataStoreFactory() {
+    }
+
+    /**
+     * Creates the data store of the type set in the configuration.
+     * Params: config - properties of the data store
+     */
+    public static DataStoreRep create(RepositoryConfiguration config) {
+        return create(config, config.getStorageType());
+    }
+
+    /**
+     * Creates the data store of a specific type in the directory set in the configuration.
+     * Params: config - properties of the data store
+     *         storageType - format of the data store
+     */
+    public static DataStoreRep create(RepositoryConfiguration config, StorageType storageType) {
+        Objects.requireNonNull(config);
+        Objects.requireNonNull(storageType);
+
+        return switch (storageType) {
+            case CSV -> new CurrencyRepository(config);
+            case MAPPED -> new MappedCurrencyRepository(config.getPathToMappedStore());
+        };
+    }
+}
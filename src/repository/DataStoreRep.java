@@ -1,16 +1,133 @@
 package repository;
 
+import exceptions.CurrencyDataException;
 import model.CurrencyRate;
 import model.LocalCurrency;
+import model.RateSnapshot;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDate;
-import java.util.Currency;
-import java.util.Map;
+import java.util.*;
+import java.util.function.Function;
 
 public interface DataStoreRep {
     void putExchangeRate(LocalDate date, Map<String, CurrencyRate> currencyRate);
+    boolean removeExchangeRate(LocalDate date, String currency);
+
+    /** Returns the unmodifiable rates of a specific date by currency code */
     Map<String, CurrencyRate> getCurrencyRateMap(LocalDate date);
-    BigDecimal exchangeCurrency(LocalDate date, BigDecimal amount,
-                 Currency fromCurrency, Currency targetCurrency, LocalCurrency localCurrency);
+
+    /**
+     * Exchanges the amount of fromCurrency into targetCurrency with the rules of exchange on the rates of a specific date.
+     * Throws: CurrencyDataException - when currencies don't exist on a specific date
+     */
+    default BigDecimal exchangeCurrency(LocalDate date, BigDecimal amount,
+                 Currency fromCurrency, Currency targetCurrency, LocalCurrency localCurrency) {
+        return exchange(amount, fromCurrency, targetCurrency, localCurrency, currency -> getCurrencyRate(date, currency));
+    }
+
+    /**
+     * Exchange rules of all data stores. A zero amount and an exchange into the same currency need no rates.
+     * Otherwise both currencies must have rates: the local currency is bought at the purchase rate of the target,
+     * a foreign currency is sold at its selling rate and the result is bought at the purchase rate of the target
+     * unless it is the local currency. Divisions are rounded HALF_UP to 10 digits after the point.
+     * Params: rates - returns the rate of a currency or null if it is absent, called only when the rates are needed
+     * Throws: CurrencyDataException - when a rate of either currency doesn't exist
+     */
+    static BigDecimal exchange(BigDecimal amount, Currency fromCurrency, Currency targetCurrency,
+                               LocalCurrency localCurrency, Function<Currency, CurrencyRate> rates) {
+        if (amount.compareTo(BigDecimal.ZERO) == 0)
+            return BigDecimal.ZERO;
+
+        if (fromCurrency.equals(targetCurrency))
+            return amount;
+
+        CurrencyRate fromRate = rates.apply(fromCurrency);
+        CurrencyRate targetRate = rates.apply(targetCurrency);
+        if (fromRate == null || targetRate == null)
+            throw new CurrencyDataException("Данные о курсе валюты отсутствуют");
+
+        if (fromCurrency.equals(localCurrency.getLocalCurrency()))
+            return amount.divide(targetRate.getPurchaseRate(), 10, RoundingMode.HALF_UP);
+
+        BigDecimal baseCurrency = amount.multiply(fromRate.getSellingRate());
+
+        if (targetCurrency.equals(localCurrency.getLocalCurrency()))
+            return baseCurrency;
+
+        return baseCurrency.divide(targetRate.getPurchaseRate(), 10, RoundingMode.HALF_UP);
+    }
+
+    /** Returns all dates that have stored rates */
+    SortedSet<LocalDate> getDates();
+
+    /** Returns dates that have stored rates from a specific date to a specific date inclusive */
+    default SortedSet<LocalDate> getDates(LocalDate from, LocalDate to) {
+        return getDates().subSet(from, to.plusDays(1));
+    }
+
+    /** Returns the latest date with stored rates on or before a specific date, or null if there is none */
+    default LocalDate getFloorDate(LocalDate date) {
+        SortedSet<LocalDate> earlierDates = getDates().headSet(date.plusDays(1));
+        return earlierDates.isEmpty() ? null : earlierDates.last();
+    }
+
+    /**
+     * Exchanges the amount into every currency stored on a specific date with the rules of exchangeCurrency.
+     * Returns results by target currency in the order of currency codes
+     */
+    default Map<Currency, BigDecimal> quoteCurrency(LocalDate date, BigDecimal amount, Currency fromCurrency,
+                                                    LocalCurrency localCurrency) {
+        Map<Currency, BigDecimal> quotes = new LinkedHashMap<>();
+        for (String code : new TreeSet<>(getCurrencyRateMap(date).keySet())) {
+            Currency targetCurrency = Currency.getInstance(code);
+            quotes.put(targetCurrency, exchangeCurrency(date, amount, fromCurrency, targetCurrency, localCurrency));
+        }
+
+        return quotes;
+    }
+
+    /**
+     * Values holdings in the local currency on a specific date: each amount is exchanged into the local currency
+     * with the rules of exchangeCurrency and the results are summed. The local currency has no stored rate,
+     * its amounts are added as they are.
+     * Returns the total or null if a rate of a foreign currency with a non-zero amount doesn't exist on the date
+     * Params: holdings - amounts by currency
+     */
+    default BigDecimal valueHoldings(LocalDate date, Map<Currency, BigDecimal> holdings, LocalCurrency localCurrency) {
+        Currency local = localCurrency.getLocalCurrency();
+        BigDecimal total = BigDecimal.ZERO;
+
+        for (Map.Entry<Currency, BigDecimal> holding : holdings.entrySet()) {
+            BigDecimal amount = holding.getValue();
+            if (amount.signum() == 0) continue;
+
+            if (holding.getKey().equals(local)) {
+                total = total.add(amount);
+                continue;
+            }
+
+            CurrencyRate rate = getCurrencyRate(date, holding.getKey());
+            if (rate == null)
+                return null;
+
+            total = total.add(amount.multiply(rate.getSellingRate()));
+        }
+
+        return total;
+    }
+
+    /**
+     * Returns the immutable snapshot of the rates of a specific date. Data stores that don't track versions
+     * build an unversioned snapshot of getCurrencyRateMap.
+     */
+    default RateSnapshot getSnapshot(LocalDate date) {
+        return new RateSnapshot(date, RateSnapshot.UNVERSIONED, getCurrencyRateMap(date));
+    }
+
+    /** Returns the rate of one currency on a specific date or null if it is absent */
+    default CurrencyRate getCurrencyRate(LocalDate date, Currency currency) {
+        return getCurrencyRateMap(date).get(currency.getCurrencyCode());
+    }
 }
@@ -0,0 +1,110 @@
+package repository;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Exclusive locks of dates for writers. Inside the process a date is guarded by one of the striped locks,
+ * between processes by a FileLock on the byte of the date in a shared lock file.
+ * Writers of different dates don't wait for each other, except for dates that share a stripe.
+ */
+final class DateLocks {
+
+    /** Action performed under the lock of a date */
+    @FunctionalInterface
+    interface LockedAction<T> {
+        T run() throws IOException;
+    }
+
+    private final static int DEFAULT_STRIPES = 64;
+
+    /** Wait before the next attempt to take a file lock held by another process, doubled up to the maximum */
+    private final static long MIN_LOCK_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private final static long MAX_LOCK_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /** Makes file lock positions of all dates non-negative */
+    private final static long POSITION_BASE = -LocalDate.MIN.toEpochDay();
+
+    private final ReentrantLock[] stripes;
+    private final Path lockFilePath;
+
+    /** Opened at the first write, so readers never create the lock file */
+    private volatile FileChannel lockChannel;
+
+    DateLocks(Path lockFilePath) {
+        this(lockFilePath, DEFAULT_STRIPES);
+    }
+
+    DateLocks(Path lockFilePath, int stripeCount) {
+        Objects.requireNonNull(lockFilePath);
+        if (stripeCount <= 0)
+            throw new IllegalArgumentException("Stripe count must be positive.");
+
+        this.lockFilePath = lockFilePath;
+        this.stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++)
+            stripes[i] = new ReentrantLock();
+    }
+
+    /**
+     * Runs the action while holding the process and file locks of the date.
+     * Throws: IOException - if the action or the file lock fails
+     */
+    <T> T withLock(LocalDate date, LockedAction<T> action) throws IOException {
+        ReentrantLock stripe = stripes[Math.floorMod(date.hashCode(), stripes.length)];
+        stripe.lock();
+        try {
+            FileLock fileLock = lockFile(POSITION_BASE + date.toEpochDay());
+            try {
+                return action.run();
+            } finally {
+                fileLock.release();
+            }
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Takes the file lock of a byte. FileChannel.lock closes the channel when the waiting thread is interrupted,
+     * which would release the file locks of all other threads, so the lock is polled with tryLock,
+     * which an interrupt doesn't affect. An interrupt is kept for the caller.
+     * Throws: IOException - if the file lock fails
+     */
+    private FileLock lockFile(long position) throws IOException {
+        boolean interrupted = false;
+        try {
+            long waitNanos = MIN_LOCK_WAIT_NANOS;
+            while (true) {
+                FileLock fileLock = channel().tryLock(position, 1, false);
+                if (fileLock != null) return fileLock;
+
+                // parkNanos returns at once while the interrupt flag is set
+                if (Thread.interrupted()) interrupted = true;
+                LockSupport.parkNanos(waitNanos);
+                waitNanos = Math.min(waitNanos * 2, MAX_LOCK_WAIT_NANOS);
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    private FileChannel channel() throws IOException {
+        FileChannel channel = lockChannel;
+        if (channel != null) return channel;
+
+        synchronized (this) {
+            if (lockChannel == null)
+                lockChannel = FileChannel.open(lockFilePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            return lockChannel;
+        }
+    }
+}
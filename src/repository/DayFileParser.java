@@ -0,0 +1,220 @@
+package repository;
+
+import exceptions.CurrencyDataException;
+import model.CurrencyRate;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parser of day files working on raw bytes. A line is "CODE, purchaseRate, sellingRate",
+ * rates are written by BigDecimal.toString. Currency codes are resolved through a table of all 3-letter codes
+ * and rates are parsed without intermediate strings. Empty lines are skipped.
+ * Change logs have the same lines for saved rates and "-CODE" lines for removed ones.
+ */
+final class DayFileParser {
+
+    private final static int LETTERS = 26;
+
+    /** Currencies by 3-letter code index, see codeIndex */
+    private final static Currency[] CURRENCIES_BY_CODE = new Currency[LETTERS * LETTERS * LETTERS];
+
+    /** Maximum number of digits that always fit into long */
+    private final static int MAX_LONG_DIGITS = 18;
+
+    private final static byte[] SEPARATOR = {',', ' '};
+
+    /** First byte of a change log line that removes a rate */
+    final static byte REMOVE_MARK = '-';
+
+    static {
+        for (Currency currency : Currency.getAvailableCurrencies()) {
+            byte[] code = currency.getCurrencyCode().getBytes(StandardCharsets.US_ASCII);
+            int index = code.length == 3 ? codeIndex(code, 0) : -1;
+            if (index >= 0) CURRENCIES_BY_CODE[index] = currency;
+        }
+    }
+
+    private DayFileParser() {
+    }
+
+    private static int codeIndex(byte[] bytes, int offset) {
+        int index = 0;
+        for (int i = offset; i < offset + 3; i++) {
+            int letter = bytes[i] - 'A';
+            if (letter < 0 || letter >= LETTERS) return -1;
+            index = index * LETTERS + letter;
+        }
+        return index;
+    }
+
+    /**
+     * Parses the content of a day file.
+     * Params: bytes - content of the file in UTF-8
+     *         fileName - name of the file for error messages
+     * Throws: CurrencyDataException - with the number of the first malformed line
+     */
+    static Map<String, CurrencyRate> parse(byte[] bytes, String fileName) {
+        Map<String, CurrencyRate> currencyRateMap = new HashMap<>();
+        apply(bytes, fileName, currencyRateMap, false);
+
+        return currencyRateMap;
+    }
+
+    /**
+     * Applies the records of a change log to the map in order. The last line is ignored if it isn't finished
+     * with a line break, it is a write interrupted by a crash.
+     * Params: bytes - content of the log in UTF-8
+     *         fileName - name of the log for error messages
+     *         currencyRateMap - rates of the snapshot
+     * Throws: CurrencyDataException - with the number of the first malformed line
+     */
+    static void replayLog(byte[] bytes, String fileName, Map<String, CurrencyRate> currencyRateMap) {
+        apply(bytes, fileName, currencyRateMap, true);
+    }
+
+    private static void apply(byte[] bytes, String fileName, Map<String, CurrencyRate> currencyRateMap, boolean log) {
+        int position = hasByteOrderMark(bytes) ? 3 : 0;
+        int lineNumber = 0;
+
+        while (position < bytes.length) {
+            lineNumber++;
+
+            int lineEnd = position;
+            while (lineEnd < bytes.length && bytes[lineEnd] != '\n') lineEnd++;
+            if (log && lineEnd == bytes.length) break;
+
+            int contentEnd = lineEnd;
+            while (contentEnd > position && isWhitespace(bytes[contentEnd - 1])) contentEnd--;
+
+            if (contentEnd > position) {
+                if (log && bytes[position] == REMOVE_MARK) {
+                    Currency currency = contentEnd - position == 4 ? currencyOf(bytes, position + 1) : null;
+                    if (currency == null)
+                        throw new CurrencyDataException("Неверный формат строки " + lineNumber + " в файле " + fileName);
+
+                    currencyRateMap.remove(currency.getCurrencyCode());
+                } else {
+                    CurrencyRate rate = parseLine(bytes, position, contentEnd);
+                    if (rate == null)
+                        throw new CurrencyDataException("Неверный формат строки " + lineNumber + " в файле " + fileName);
+
+                    currencyRateMap.put(rate.getCurrency().getCurrencyCode(), rate);
+                }
+            }
+
+            position = lineEnd + 1;
+        }
+    }
+
+    private static Currency currencyOf(byte[] bytes, int offset) {
+        int index = codeIndex(bytes, offset);
+        return index < 0 ? null : CURRENCIES_BY_CODE[index];
+    }
+
+    private static boolean hasByteOrderMark(byte[] bytes) {
+        return bytes.length >= 3 && bytes[0] == (byte) 0xEF && bytes[1] == (byte) 0xBB && bytes[2] == (byte) 0xBF;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    /** Returns the rate of the line from start (inclusive) to end (exclusive) or null if the line is malformed */
+    private static CurrencyRate parseLine(byte[] bytes, int start, int end) {
+        if (end - start < 3 + SEPARATOR.length) return null;
+
+        Currency currency = currencyOf(bytes, start);
+        if (currency == null) return null;
+
+        int purchaseStart = start + 3;
+        if (!isSeparator(bytes, purchaseStart, end)) return null;
+        purchaseStart += SEPARATOR.length;
+
+        int purchaseEnd = purchaseStart;
+        while (purchaseEnd < end && bytes[purchaseEnd] != ',') purchaseEnd++;
+        if (!isSeparator(bytes, purchaseEnd, end)) return null;
+
+        int sellingStart = purchaseEnd + SEPARATOR.length;
+        BigDecimal purchaseRate = parseDecimal(bytes, purchaseStart, purchaseEnd);
+        BigDecimal sellingRate = parseDecimal(bytes, sellingStart, end);
+
+        if (purchaseRate == null || sellingRate == null || purchaseRate.signum() <= 0 || sellingRate.signum() <= 0)
+            return null;
+
+        return new CurrencyRate(currency, purchaseRate, sellingRate);
+    }
+
+    private static boolean isSeparator(byte[] bytes, int position, int end) {
+        return position + SEPARATOR.length <= end && bytes[position] == SEPARATOR[0] && bytes[position + 1] == SEPARATOR[1];
+    }
+
+    /**
+     * Parses a decimal in the format of BigDecimal.toString: [sign] digits [. digits] [E [sign] digits].
+     * Returns null if the format is wrong. Numbers with more than 18 digits are parsed by BigDecimal.
+     */
+    private static BigDecimal parseDecimal(byte[] bytes, int start, int end) {
+        int position = start;
+        boolean negative = false;
+        if (position < end && (bytes[position] == '-' || bytes[position] == '+')) {
+            negative = bytes[position] == '-';
+            position++;
+        }
+
+        long unscaled = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean point = false;
+
+        for (; position < end; position++) {
+            byte b = bytes[position];
+            if (b >= '0' && b <= '9') {
+                unscaled = unscaled * 10 + (b - '0');
+                digits++;
+                if (point) fractionDigits++;
+            } else if (b == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) return null;
+
+        long exponent = 0;
+        if (position < end) {
+            if (bytes[position] != 'E' && bytes[position] != 'e') return null;
+            position++;
+
+            boolean negativeExponent = false;
+            if (position < end && (bytes[position] == '-' || bytes[position] == '+')) {
+                negativeExponent = bytes[position] == '-';
+                position++;
+            }
+            if (position == end) return null;
+
+            for (; position < end; position++) {
+                byte b = bytes[position];
+                if (b < '0' || b > '9' || exponent > Integer.MAX_VALUE) return null;
+                exponent = exponent * 10 + (b - '0');
+            }
+            if (negativeExponent) exponent = -exponent;
+        }
+
+        long scale = fractionDigits - exponent;
+        if (digits > MAX_LONG_DIGITS || scale < Integer.MIN_VALUE || scale > Integer.MAX_VALUE)
+            return parseWithBigDecimal(bytes, start, end);
+
+        return BigDecimal.valueOf(negative ? -unscaled : unscaled, (int) scale);
+    }
+
+    private static BigDecimal parseWithBigDecimal(byte[] bytes, int start, int end) {
+        try {
+            return new BigDecimal(new String(bytes, start, end - start, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException exception) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package repository;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Watches files of a directory on a daemon thread and reports changes debounced by key:
+ * a key is reported once, after no event of it has arrived during the quiet period,
+ * so a burst of writes to the files of one key triggers one callback.
+ * Callbacks run on the watcher thread, an exception of a callback doesn't stop watching.
+ */
+final class DirectoryWatcher<K> implements AutoCloseable {
+
+    private final WatchService watchService;
+
+    /** Maps the name of a changed file to its key, null for files that aren't watched */
+    private final Function<Path, K> keyOf;
+
+    private final Consumer<K> onChange;
+
+    /** Called when events have been lost, all keys must be considered changed */
+    private final Runnable onOverflow;
+
+    private final long quietPeriodNanos;
+
+    /** Deadlines of changed keys in the order of their last events, used only by the watcher thread */
+    private final Map<K, Long> pending = new LinkedHashMap<>();
+
+    /**
+     * Registers the directory and starts the watcher thread.
+     * Params: directory - directory to watch
+     *         quietPeriodMillis - time without events after which a key is reported
+     * Throws: IOException
+     */
+    DirectoryWatcher(Path directory, long quietPeriodMillis, Function<Path, K> keyOf, Consumer<K> onChange,
+                     Runnable onOverflow) throws IOException {
+        Objects.requireNonNull(directory);
+        Objects.requireNonNull(keyOf);
+        Objects.requireNonNull(onChange);
+        Objects.requireNonNull(onOverflow);
+        if (quietPeriodMillis < 0)
+            throw new IllegalArgumentException("Quiet period must not be negative.");
+
+        this.keyOf = keyOf;
+        this.onChange = onChange;
+        this.onOverflow = onOverflow;
+        this.quietPeriodNanos = TimeUnit.MILLISECONDS.toNanos(quietPeriodMillis);
+
+        this.watchService = directory.getFileSystem().newWatchService();
+        try {
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException exception) {
+            watchService.close();
+            throw exception;
+        }
+
+        Thread thread = new Thread(this::run, "directory-watcher-" + directory.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey watchKey = pending.isEmpty()
+                        ? watchService.take()
+                        : watchService.poll(pending.values().iterator().next() - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+                if (watchKey != null) {
+                    collect(watchKey);
+                    if (!watchKey.reset()) return;
+                }
+
+                reportDue();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException exception) {
+            // stopped
+        }
+    }
+
+    private void collect(WatchKey watchKey) {
+        for (WatchEvent<?> event : watchKey.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                pending.clear();
+                runCallback(onOverflow);
+                continue;
+            }
+
+            K key = keyOf.apply((Path) event.context());
+            if (key == null) continue;
+
+            // the key moves to the end, so deadlines stay in ascending order
+            pending.remove(key);
+            pending.put(key, System.nanoTime() + quietPeriodNanos);
+        }
+    }
+
+    private void reportDue() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<K, Long>> iterator = pending.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            Map.Entry<K, Long> entry = iterator.next();
+            if (entry.getValue() - now > 0) return;
+
+            iterator.remove();
+            K key = entry.getKey();
+            runCallback(() -> onChange.accept(key));
+        }
+    }
+
+    private static void runCallback(Runnable callback) {
+        try {
+            callback.run();
+        } catch (RuntimeException exception) {
+            // the next read of the key reports the error
+        }
+    }
+
+    /**
+     * Stops the watcher thread, a running callback is finished. Changes waiting for the quiet period aren't reported.
+     * The thread isn't interrupted, an interrupt would close the file channels used by the callback.
+     * Throws: IOException
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
@@ -0,0 +1,67 @@
+package repository;
+
+/**
+ * Exact arithmetic of the exchange on unscaled long values. A value is a pair (unscaled, scale)
+ * that means unscaled * 10^-scale, like in BigDecimal. Results are the same as BigDecimal.multiply and
+ * BigDecimal.divide(divisor, 10, RoundingMode.HALF_UP). Methods throw ArithmeticException when
+ * an intermediate value doesn't fit into long, so the caller can fall back to BigDecimal.
+ */
+final class FixedPointArithmetic {
+
+    /** Scale of the result of a division */
+    final static int DIVISION_SCALE = 10;
+
+    private final static long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    private FixedPointArithmetic() {
+    }
+
+    /**
+     * Returns the unscaled product, its scale is the sum of the scales of the factors.
+     * Throws: ArithmeticException - on overflow
+     */
+    static long multiply(long unscaled, long factorUnscaled) {
+        return Math.multiplyExact(unscaled, factorUnscaled);
+    }
+
+    /**
+     * Returns the unscaled quotient with scale DIVISION_SCALE rounded HALF_UP.
+     * Throws: ArithmeticException - on overflow or division by zero
+     */
+    static long divide(long dividendUnscaled, long dividendScale, long divisorUnscaled, long divisorScale) {
+        if (divisorUnscaled == 0)
+            throw new ArithmeticException("Division by zero");
+
+        long exponent = divisorScale - dividendScale + DIVISION_SCALE;
+        long dividend = dividendUnscaled;
+        long divisor = divisorUnscaled;
+
+        if (exponent >= 0) dividend = Math.multiplyExact(dividend, powerOfTen(exponent));
+        else divisor = Math.multiplyExact(divisor, powerOfTen(-exponent));
+
+        if (dividend == Long.MIN_VALUE || divisor == Long.MIN_VALUE)
+            throw new ArithmeticException("Overflow");
+
+        long quotient = dividend / divisor;
+        long remainder = Math.abs(dividend % divisor);
+        long absDivisor = Math.abs(divisor);
+
+        if (remainder != 0 && remainder >= absDivisor - remainder)
+            quotient += (dividend < 0) == (divisor < 0) ? 1 : -1;
+
+        return quotient;
+    }
+
+    private static long powerOfTen(long exponent) {
+        if (exponent >= POWERS_OF_TEN.length)
+            throw new ArithmeticException("Overflow");
+
+        return POWERS_OF_TEN[(int) exponent];
+    }
+}
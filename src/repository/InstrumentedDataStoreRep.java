@@ -0,0 +1,177 @@
+package repository;
+
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import model.CurrencyRate;
+import model.LocalCurrency;
+import model.RateSnapshot;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Currency;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedSet;
+
+/**
+ * Data store that records the latency of every call of another data store in timers named "repository.<method>".
+ * Failed calls are timed as well. While metrics are disabled the calls are passed through without reading the clock.
+ */
+public class InstrumentedDataStoreRep implements DataStoreRep {
+
+    private final DataStoreRep delegate;
+
+    private final LatencyHistogram putTimer = Metrics.timer("repository.putExchangeRate");
+    private final LatencyHistogram removeTimer = Metrics.timer("repository.removeExchangeRate");
+    private final LatencyHistogram mapTimer = Metrics.timer("repository.getCurrencyRateMap");
+    private final LatencyHistogram snapshotTimer = Metrics.timer("repository.getSnapshot");
+    private final LatencyHistogram rateTimer = Metrics.timer("repository.getCurrencyRate");
+    private final LatencyHistogram exchangeTimer = Metrics.timer("repository.exchangeCurrency");
+    private final LatencyHistogram quoteTimer = Metrics.timer("repository.quoteCurrency");
+    private final LatencyHistogram valueTimer = Metrics.timer("repository.valueHoldings");
+    private final LatencyHistogram datesTimer = Metrics.timer("repository.getDates");
+    private final LatencyHistogram floorTimer = Metrics.timer("repository.getFloorDate");
+
+    public InstrumentedDataStoreRep(DataStoreRep delegate) {
+        Objects.requireNonNull(delegate);
+
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void putExchangeRate(LocalDate date, Map<String, CurrencyRate> currencyRate) {
+        if (!Metrics.enabled()) {
+            delegate.putExchangeRate(date, currencyRate);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            delegate.putExchangeRate(date, currencyRate);
+        } finally {
+            putTimer.recordSince(start);
+        }
+    }
+
+    @Override
+    public boolean removeExchangeRate(LocalDate date, String currency) {
+        if (!Metrics.enabled()) return delegate.removeExchangeRate(date, currency);
+
+        long start = System.nanoTime();
+        try {
+            return delegate.removeExchangeRate(date, currency);
+        } finally {
+            removeTimer.recordSince(start);
+        }
+    }
+
+    @Override
+    public Map<String, CurrencyRate> getCurrencyRateMap(LocalDate date) {
+        if (!Metrics.enabled()) return delegate.getCurrencyRateMap(date);
+
+        long start = System.nanoTime();
+        try {
+            return delegate.getCurrencyRateMap(date);
+        } finally {
+            mapTimer.recordSince(start);
+        }
+    }
+
+    @Override
+    public RateSnapshot getSnapshot(LocalDate date) {
+        if (!Metrics.enabled()) return delegate.getSnapshot(date);
+
+        long start = System.nanoTime();
+        try {
+            return delegate.getSnapshot(date);
+        } finally {
+            snapshotTimer.recordSince(start);
+        }
+    }
+
+    @Override
+    public CurrencyRate getCurrencyRate(LocalDate date, Currency currency) {
+        if (!Metrics.enabled()) return delegate.getCurrencyRate(date, currency);
+
+        long start = System.nanoTime();
+        try {
+            return delegate.getCurrencyRate(date, currency);
+        } finally {
+            rateTimer.recordSince(start);
+        }
+    }
+
+    @Override
+    public BigDecimal exchangeCurrency(LocalDate date, BigDecimal amount, Currency fromCurrency, Currency targetCurrency,
+                                       LocalCurrency localCurrency) {
+        if (!Metrics.enabled()) return delegate.exchangeCurrency(date, amount, fromCurrency, targetCurrency, localCurrency);
+
+        long start = System.nanoTime();
+        try {
+            return delegate.exchangeCurrency(date, amount, fromCurrency, targetCurrency, localCurrency);
+        } finally {
+            exchangeTimer.recordSince(start);
+        }
+    }
+
+    @Override
+    public Map<Currency, BigDecimal> quoteCurrency(LocalDate date, BigDecimal amount, Currency fromCurrency,
+                                                   LocalCurrency localCurrency) {
+        if (!Metrics.enabled()) return delegate.quoteCurrency(date, amount, fromCurrency, localCurrency);
+
+        long start = System.nanoTime();
+        try {
+            return delegate.quoteCurrency(date, amount, fromCurrency, localCurrency);
+        } finally {
+            quoteTimer.recordSince(start);
+        }
+    }
+
+    @Override
+    public BigDecimal valueHoldings(LocalDate date, Map<Currency, BigDecimal> holdings, LocalCurrency localCurrency) {
+        if (!Metrics.enabled()) return delegate.valueHoldings(date, holdings, localCurrency);
+
+        long start = System.nanoTime();
+        try {
+            return delegate.valueHoldings(date, holdings, localCurrency);
+        } finally {
+            valueTimer.recordSince(start);
+        }
+    }
+
+    @Override
+    public SortedSet<LocalDate> getDates() {
+        if (!Metrics.enabled()) return delegate.getDates();
+
+        long start = System.nanoTime();
+        try {
+            return delegate.getDates();
+        } finally {
+            datesTimer.recordSince(start);
+        }
+    }
+
+    @Override
+    public SortedSet<LocalDate> getDates(LocalDate from, LocalDate to) {
+        if (!Metrics.enabled()) return delegate.getDates(from, to);
+
+        long start = System.nanoTime();
+        try {
+            return delegate.getDates(from, to);
+        } finally {
+            datesTimer.recordSince(start);
+        }
+    }
+
+    @Override
+    public LocalDate getFloorDate(LocalDate date) {
+        if (!Metrics.enabled()) return delegate.getFloorDate(date);
+
+        long start = System.nanoTime();
+        try {
+            return delegate.getFloorDate(date);
+        } finally {
+            floorTimer.recordSince(start);
+        }
+    }
+}
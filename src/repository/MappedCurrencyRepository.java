@@ -0,0 +1,364 @@
+package repository;
+
+import exceptions.CurrencyDataException;
+import metrics.Metrics;
+import model.CurrencyRate;
+import model.RateSnapshot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stores the rates of all dates in one binary file accessed through a MappedByteBuffer.
+ * Layout: header (magic, version, number of slots, 3-letter codes of slot currencies),
+ * then fixed-size day records. A record is the epoch day followed by one slot per currency,
+ * a slot holds the unscaled purchase and selling rates and their scales. An empty slot has zero rates.
+ * Writes are serialized by the monitor of the repository. Reads don't take it: a record has a sequence number
+ * that writers make odd while they change its slots. A read copies the slot bytes and is retried when the number
+ * changed under it, rates are created only from a consistent copy.
+ * Every record has a snapshot version in memory, drawn when the file is opened and on every change of the record.
+ */
+public class MappedCurrencyRepository implements DataStoreRep {
+
+    /** "CURR" in ASCII */
+    private final static int MAGIC = 0x43555252;
+    private final static int VERSION = 1;
+
+    /** Offset of the slot codes in the header */
+    private final static int CODES_OFFSET = 12;
+    private final static int CODE_LENGTH = 3;
+
+    /** Purchase unscaled (long), selling unscaled (long), purchase scale (short), selling scale (short) */
+    private final static int SLOT_SIZE = 20;
+    private final static int SELLING_OFFSET = 8;
+    private final static int PURCHASE_SCALE_OFFSET = 16;
+    private final static int SELLING_SCALE_OFFSET = 18;
+
+    /** Size of the epoch day at the start of a record */
+    private final static int DAY_HEADER_SIZE = 8;
+
+    /** Number of reads retried without a lock before a read takes the monitor of the writers */
+    private final static int OPTIMISTIC_READS = 64;
+
+    private final static LongAdder BYTES_READ = Metrics.counter("repository.bytesRead");
+    private final static LongAdder BYTES_WRITTEN = Metrics.counter("repository.bytesWritten");
+
+    private final FileChannel channel;
+
+    /** Currency codes by slot number */
+    private final String[] slotCodes;
+
+    /** Slot numbers by currency code */
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    /** Day records by date */
+    private final ConcurrentSkipListMap<LocalDate, DayRecord> index = new ConcurrentSkipListMap<>();
+
+    private final int headerSize;
+    private final int recordSize;
+
+    private volatile MappedByteBuffer buffer;
+
+    /**
+     * Opens the file or creates it with a slot for each currency available in java.util.Currency.
+     * Params: filePath - path to the binary file
+     * Throws: UncheckedIOException
+     *         CurrencyDataException - if the file has an unknown format
+     */
+    public MappedCurrencyRepository(Path filePath) {
+        Objects.requireNonNull(filePath);
+
+        try {
+            boolean exists = Files.exists(filePath) && Files.size(filePath) > 0;
+            channel = FileChannel.open(filePath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+
+            if (!exists) writeHeader(channel);
+
+            ByteBuffer header = ByteBuffer.allocate(CODES_OFFSET);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION)
+                throw new CurrencyDataException("Неверный формат файла данных");
+
+            int slotCount = header.getInt();
+            ByteBuffer codes = ByteBuffer.allocate(slotCount * CODE_LENGTH);
+            channel.read(codes, CODES_OFFSET);
+
+            slotCodes = new String[slotCount];
+            for (int i = 0; i < slotCount; i++) {
+                slotCodes[i] = new String(codes.array(), i * CODE_LENGTH, CODE_LENGTH, StandardCharsets.US_ASCII);
+                slots.put(slotCodes[i], i);
+            }
+
+            headerSize = alignedHeaderSize(slotCount);
+            recordSize = DAY_HEADER_SIZE + slotCount * SLOT_SIZE;
+
+            remap();
+            for (int offset = headerSize; offset + recordSize <= buffer.capacity(); offset += recordSize)
+                index.put(LocalDate.ofEpochDay(buffer.getLong(offset)), new DayRecord(offset));
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    private static int alignedHeaderSize(int slotCount) {
+        int size = CODES_OFFSET + slotCount * CODE_LENGTH;
+        return (size + 7) & ~7;
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        List<String> codes = new ArrayList<>();
+        for (Currency currency : Currency.getAvailableCurrencies())
+            codes.add(currency.getCurrencyCode());
+        Collections.sort(codes);
+
+        ByteBuffer header = ByteBuffer.allocate(alignedHeaderSize(codes.size()));
+        header.putInt(MAGIC).putInt(VERSION).putInt(codes.size());
+        for (String code : codes)
+            header.put(code.getBytes(StandardCharsets.US_ASCII));
+        header.clear();
+
+        channel.write(header, 0);
+    }
+
+    private void remap() throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+    }
+
+    /** Returns the unmodifiable view of all dates stored in the file */
+    @Override
+    public SortedSet<LocalDate> getDates() {
+        return Collections.unmodifiableSortedSet(index.navigableKeySet());
+    }
+
+    /**
+     * Returns the rate of one currency reading only its slot, or null if the rate is absent.
+     * Params: date - date of exchange rate
+     *         currency - currency in ISO format
+     */
+    @Override
+    public CurrencyRate getCurrencyRate(LocalDate date, Currency currency) {
+        Integer slot = slots.get(currency.getCurrencyCode());
+        DayRecord record = index.get(date);
+        if (slot == null || record == null) return null;
+
+        if (Metrics.enabled()) BYTES_READ.add(SLOT_SIZE);
+        return rateOf(readSlots(record, slot, 1).slots(), 0, slot);
+    }
+
+    /**
+     * Returns the unmodifiable map of all CurrencyRates stored on a specific date.
+     * Params: date - date of exchange rate
+     */
+    @Override
+    public Map<String, CurrencyRate> getCurrencyRateMap(LocalDate date) {
+        DayRecord record = index.get(date);
+        if (record == null) return Map.of();
+
+        if (Metrics.enabled()) BYTES_READ.add((long) slotCodes.length * SLOT_SIZE);
+        return Collections.unmodifiableMap(ratesOf(readSlots(record, 0, slotCodes.length).slots()));
+    }
+
+    /**
+     * Returns the rates of a specific date with the version of their record.
+     * A date without rates has an unversioned snapshot.
+     */
+    @Override
+    public RateSnapshot getSnapshot(LocalDate date) {
+        DayRecord record = index.get(date);
+        if (record == null) return new RateSnapshot(date, RateSnapshot.UNVERSIONED, Map.of());
+
+        if (Metrics.enabled()) BYTES_READ.add((long) slotCodes.length * SLOT_SIZE);
+        SlotCopy copy = readSlots(record, 0, slotCodes.length);
+        Map<String, CurrencyRate> currencyRateMap = ratesOf(copy.slots());
+        return new RateSnapshot(date, currencyRateMap.isEmpty() ? RateSnapshot.UNVERSIONED : copy.version(), currencyRateMap);
+    }
+
+    /**
+     * Copies the bytes of consecutive slots of the record with its version. The copy is retried while a writer
+     * changes the record: rates are created only from a copy whose sequence didn't change,
+     * so they never see half-written slots.
+     */
+    private SlotCopy readSlots(DayRecord record, int firstSlot, int slotCount) {
+        byte[] bytes = new byte[slotCount * SLOT_SIZE];
+        int offset = record.offset + DAY_HEADER_SIZE + firstSlot * SLOT_SIZE;
+
+        for (int attempt = 0; attempt < OPTIMISTIC_READS; attempt++) {
+            long sequence = record.sequence;
+            if ((sequence & 1) == 0) {
+                long recordVersion = record.version;
+                buffer.get(offset, bytes);
+                VarHandle.acquireFence();
+                if (record.sequence == sequence) return new SlotCopy(ByteBuffer.wrap(bytes), recordVersion);
+            }
+            Thread.onSpinWait();
+        }
+
+        synchronized (this) {
+            buffer.get(offset, bytes);
+            return new SlotCopy(ByteBuffer.wrap(bytes), record.version);
+        }
+    }
+
+    /**
+     * Creates the rate of a copied slot or returns null if the slot is empty.
+     * Params: slots - copied slots
+     *         position - position of the slot in the copy
+     *         slot - slot number
+     */
+    private CurrencyRate rateOf(ByteBuffer slots, int position, int slot) {
+        long purchase = slots.getLong(position);
+        if (purchase == 0) return null;
+
+        return new CurrencyRate(
+                Currency.getInstance(slotCodes[slot]),
+                BigDecimal.valueOf(purchase, slots.getShort(position + PURCHASE_SCALE_OFFSET)),
+                BigDecimal.valueOf(slots.getLong(position + SELLING_OFFSET), slots.getShort(position + SELLING_SCALE_OFFSET))
+        );
+    }
+
+    /** Creates the rates of all slots of a copied record */
+    private Map<String, CurrencyRate> ratesOf(ByteBuffer slots) {
+        Map<String, CurrencyRate> currencyRateMap = new HashMap<>();
+        for (int slot = 0; slot < slotCodes.length; slot++) {
+            CurrencyRate rate = rateOf(slots, slot * SLOT_SIZE, slot);
+            if (rate != null) currencyRateMap.put(slotCodes[slot], rate);
+        }
+        return currencyRateMap;
+    }
+
+    /**
+     * Writes rates to the slots of a specific date. If the rate already exists, it'll be overwritten.
+     * Params: date - date of exchange rate
+     *         currencyRate - rates on a specific date
+     * Throws: UncheckedIOException
+     *         CurrencyDataException - if the currency has no slot or the rate doesn't fit into the slot
+     */
+    @Override
+    public synchronized void putExchangeRate(LocalDate date, Map<String, CurrencyRate> currencyRate) {
+        for (CurrencyRate rate : currencyRate.values()) {
+            if (!slots.containsKey(rate.getCurrency().getCurrencyCode()) || !fitsSlot(rate.getPurchaseRate()) ||
+                    !fitsSlot(rate.getSellingRate()))
+                throw new CurrencyDataException("Курс валюты не может быть сохранён");
+        }
+
+        try {
+            DayRecord record = index.get(date);
+            if (record == null) record = appendRecord(date);
+
+            beginWrite(record);
+            try {
+                for (CurrencyRate rate : currencyRate.values()) {
+                    int offset = record.offset + DAY_HEADER_SIZE + slots.get(rate.getCurrency().getCurrencyCode()) * SLOT_SIZE;
+                    buffer.putLong(offset, rate.getPurchaseRate().unscaledValue().longValueExact());
+                    buffer.putLong(offset + SELLING_OFFSET, rate.getSellingRate().unscaledValue().longValueExact());
+                    buffer.putShort(offset + PURCHASE_SCALE_OFFSET, (short) rate.getPurchaseRate().scale());
+                    buffer.putShort(offset + SELLING_SCALE_OFFSET, (short) rate.getSellingRate().scale());
+                }
+            } finally {
+                endWrite(record);
+            }
+            if (Metrics.enabled()) BYTES_WRITTEN.add((long) currencyRate.size() * SLOT_SIZE);
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /**
+     * Clears the slot of the currency on a specific date.
+     * Returns true if the currency has been deleted, and false if the currency doesn't exist
+     */
+    @Override
+    public synchronized boolean removeExchangeRate(LocalDate date, String currency) {
+        Integer slot = slots.get(currency);
+        DayRecord record = index.get(date);
+        if (slot == null || record == null) return false;
+
+        int offset = record.offset + DAY_HEADER_SIZE + slot * SLOT_SIZE;
+        if (buffer.getLong(offset) == 0) return false;
+
+        beginWrite(record);
+        try {
+            buffer.put(offset, new byte[SLOT_SIZE]);
+        } finally {
+            endWrite(record);
+        }
+        if (Metrics.enabled()) BYTES_WRITTEN.add(SLOT_SIZE);
+        return true;
+    }
+
+    /**
+     * Makes the sequence of the record odd before its slots change and draws the version of the changed record.
+     * Must be called under the monitor
+     */
+    private static void beginWrite(DayRecord record) {
+        record.sequence++;
+        // the version and slot stores must not become visible before the odd sequence
+        VarHandle.storeStoreFence();
+        record.version = RateSnapshot.nextVersion();
+    }
+
+    /** Makes the sequence of the record even again, publishing the changed slots */
+    private static void endWrite(DayRecord record) {
+        record.sequence++;
+    }
+
+    private static boolean fitsSlot(BigDecimal value) {
+        return value.unscaledValue().bitLength() < Long.SIZE && value.scale() >= Short.MIN_VALUE &&
+                value.scale() <= Short.MAX_VALUE;
+    }
+
+    /**
+     * Adds an empty record to the end of the file and maps the file again.
+     * Returns the new record.
+     */
+    private DayRecord appendRecord(LocalDate date) throws IOException {
+        long offset = channel.size();
+        if (offset + recordSize > Integer.MAX_VALUE)
+            throw new CurrencyDataException("Файл данных переполнен");
+
+        ByteBuffer record = ByteBuffer.allocate(recordSize);
+        record.putLong(0, date.toEpochDay());
+        channel.write(record, offset);
+        if (Metrics.enabled()) BYTES_WRITTEN.add(recordSize);
+
+        // the index publishes the record after the buffer that covers it
+        remap();
+        DayRecord dayRecord = new DayRecord((int) offset);
+        index.put(date, dayRecord);
+        return dayRecord;
+    }
+
+    /** Bytes of slots copied from a record and the version of the record */
+    private record SlotCopy(ByteBuffer slots, long version) {
+    }
+
+    /** Day record of the file */
+    private static final class DayRecord {
+        private final int offset;
+
+        /** Odd while a writer changes the slots of the record */
+        private volatile long sequence;
+
+        /** Version of the snapshot of the record, changed together with the slots */
+        private volatile long version = RateSnapshot.nextVersion();
+
+        private DayRecord(int offset) {
+            this.offset = offset;
+        }
+    }
+}
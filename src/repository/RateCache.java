@@ -0,0 +1,216 @@
+package repository;
+
+import model.CurrencyRate;
+import model.RateSnapshot;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of parsed day tables keyed by date.
+ * An entry is valid only while the modification time and size of its files don't change.
+ * Entries are published through a concurrent map, so reads don't take a lock. Puts evict with the second-chance
+ * algorithm: an entry read since the clock hand passed it is skipped once, which approximates LRU
+ * without making reads reorder a shared list.
+ */
+class RateCache {
+
+    /** Published versions kept per cached table, versions of uncached dates over the limit are dropped */
+    private final static int PUBLISHED_PER_ENTRY = 2;
+
+    /** Maximum number of day tables kept in memory */
+    private final int capacity;
+
+    /** Compile day tables for exchange on unscaled long values */
+    private final boolean fixedPoint;
+
+    private final ConcurrentHashMap<LocalDate, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Stamp and version of the last published table of a date, kept after eviction up to a multiple of the capacity.
+     * Used only under the lock of put
+     */
+    private final Map<LocalDate, Published> published = new HashMap<>();
+
+    /** Greatest version of the dropped published versions, used only under the lock of put */
+    private long droppedVersion = RateSnapshot.UNVERSIONED;
+
+    /** Clock hand of the eviction, used only under the lock of put */
+    private Iterator<Entry> hand;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    RateCache(int capacity) {
+        this(capacity, false);
+    }
+
+    RateCache(int capacity, boolean fixedPoint) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Cache capacity must be positive.");
+
+        this.capacity = capacity;
+        this.fixedPoint = fixedPoint;
+    }
+
+    /**
+     * Returns the cached day table or null if it is absent or stale. The table must not be changed.
+     * Params: date - date of exchange rate
+     *         stamp - current attributes of the files of the date
+     */
+    DayTable get(LocalDate date, FileStamp stamp) {
+        Entry entry = entries.get(date);
+
+        if (entry == null || !entry.stamp.equals(stamp)) {
+            if (entry != null) entries.remove(date, entry);
+            misses.increment();
+            return null;
+        }
+
+        // written only when it changes, so hot entries don't bounce a cache line between readers
+        if (!entry.referenced) entry.referenced = true;
+        hits.increment();
+        return entry.dayTable;
+    }
+
+    /**
+     * Publishes the rates written by a writer with a new version together with the attributes of their files.
+     * Returns the stored table.
+     */
+    synchronized DayTable put(LocalDate date, FileStamp stamp, Map<String, CurrencyRate> currencyRateMap) {
+        Objects.requireNonNull(stamp);
+
+        return publish(date, stamp, newDayTable(date, RateSnapshot.nextVersion(), currencyRateMap));
+    }
+
+    /**
+     * Publishes the rates read from files together with the attributes of the files.
+     * Files with the stamp of the last published table keep its version, so a date read again after eviction
+     * or by concurrent reads has the same version while the published version is kept. Rates with a smaller version
+     * than the last published one, or than a dropped one if the date has none, are returned but not published,
+     * so versions of a date don't go back when reads finish out of order.
+     * Returns the table of the rates.
+     * Params: version - version drawn before the files were read, so rates of older files get a smaller version
+     *         than rates published by the writer that replaced the files
+     */
+    synchronized DayTable put(LocalDate date, FileStamp stamp, Map<String, CurrencyRate> currencyRateMap, long version) {
+        Objects.requireNonNull(stamp);
+
+        Published last = published.get(date);
+        if (last != null && last.stamp.equals(stamp))
+            return publish(date, stamp, newDayTable(date, last.version, currencyRateMap));
+        if ((last != null ? last.version : droppedVersion) > version)
+            return newDayTable(date, version, currencyRateMap);
+
+        return publish(date, stamp, newDayTable(date, version, currencyRateMap));
+    }
+
+    private DayTable newDayTable(LocalDate date, long version, Map<String, CurrencyRate> currencyRateMap) {
+        RateSnapshot snapshot = new RateSnapshot(date, version, currencyRateMap);
+        return new DayTable(snapshot, new CrossRateTable(snapshot.getRates(), fixedPoint));
+    }
+
+    /** Stores the table and evicts entries over the capacity. Must be called under the lock of put */
+    private DayTable publish(LocalDate date, FileStamp stamp, DayTable dayTable) {
+        published.put(date, new Published(stamp, dayTable.snapshot().getVersion()));
+        entries.put(date, new Entry(date, stamp, dayTable));
+
+        while (entries.size() > capacity) evict();
+        if (published.size() > (long) PUBLISHED_PER_ENTRY * capacity) dropUncachedVersions();
+        return dayTable;
+    }
+
+    /** Drops the published versions of dates without a cached table. Must be called under the lock of put */
+    private void dropUncachedVersions() {
+        Iterator<Map.Entry<LocalDate, Published>> iterator = published.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<LocalDate, Published> entry = iterator.next();
+            if (entries.containsKey(entry.getKey())) continue;
+
+            droppedVersion = Math.max(droppedVersion, entry.getValue().version);
+            iterator.remove();
+        }
+    }
+
+    /** Advances the clock hand to the first entry not read since the last pass and removes it */
+    private void evict() {
+        while (true) {
+            if (hand == null || !hand.hasNext()) {
+                hand = entries.values().iterator();
+                // emptied by concurrent invalidations
+                if (!hand.hasNext()) return;
+            }
+
+            Entry entry = hand.next();
+            if (entry.referenced) {
+                entry.referenced = false;
+            } else {
+                entries.remove(entry.date, entry);
+                return;
+            }
+        }
+    }
+
+    /** Removes the table and the published version of the date */
+    synchronized void invalidate(LocalDate date) {
+        entries.remove(date);
+
+        Published last = published.remove(date);
+        if (last != null) droppedVersion = Math.max(droppedVersion, last.version);
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    /** Published snapshot of the rates of a date and the same rates compiled for exchange */
+    record DayTable(RateSnapshot snapshot, CrossRateTable crossRates) {
+
+        Map<String, CurrencyRate> currencyRateMap() {
+            return snapshot.getRates();
+        }
+    }
+
+    /**
+     * Modification times and sizes of the snapshot file and the change log of a date.
+     * An absent file has null time and zero size.
+     */
+    record FileStamp(FileTime snapshotModified, long snapshotSize, FileTime logModified, long logSize) {
+
+        static FileStamp of(BasicFileAttributes snapshot, BasicFileAttributes log) {
+            return new FileStamp(
+                    snapshot == null ? null : snapshot.lastModifiedTime(), snapshot == null ? 0 : snapshot.size(),
+                    log == null ? null : log.lastModifiedTime(), log == null ? 0 : log.size()
+            );
+        }
+    }
+
+    private record Published(FileStamp stamp, long version) {
+    }
+
+    private static final class Entry {
+        private final LocalDate date;
+        private final FileStamp stamp;
+        private final DayTable dayTable;
+
+        /** Set by reads, cleared by the clock hand */
+        private volatile boolean referenced = true;
+
+        private Entry(LocalDate date, FileStamp stamp, DayTable dayTable) {
+            this.date = date;
+            this.stamp = stamp;
+            this.dayTable = dayTable;
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package repository;
+
+import exceptions.CurrencyDataException;
+import metrics.Metrics;
+import model.CurrencyRate;
+import model.LocalCurrency;
+import model.RateSnapshot;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decorator of a data store that buffers saved rates in memory and writes them in groups. Pending rates
+ * are coalesced by date and currency, a later rate of a currency replaces the earlier one. The buffer is
+ * flushed with one write per date when it holds the maximum number of rates, by the writer that fills it,
+ * or after the maximum delay since the first pending rate, by a background thread.
+ * Reads see the buffered rates: rates being flushed and pending rates are laid over the rates of the data store.
+ * Every change of the buffered rates of a date draws a new version, a snapshot of a buffered date has that version:
+ * a flush doesn't change the merged rates, and the stored snapshot it publishes has a greater version.
+ * A change of the stored rates of a buffered date by another process gets a new version only after the flush.
+ * Rates still pending when the process dies are lost, so the buffer must be closed before exit.
+ */
+public class WriteBehindDataStoreRep implements DataStoreRep, AutoCloseable {
+
+    private final static LongAdder FLUSHES = Metrics.counter("writeBehind.flushes");
+    private final static LongAdder FLUSHED_DATES = Metrics.counter("writeBehind.flushedDates");
+    private final static LongAdder COALESCED_RATES = Metrics.counter("writeBehind.coalescedRates");
+
+    private final DataStoreRep delegate;
+    private final int maxPendingRates;
+    private final long maxDelayMillis;
+
+    /** Guards pending, flushing, their versions, pendingRates, flushScheduled and closed */
+    private final Object lock = new Object();
+
+    /** Held during a flush and a removal, so the writes of two flushes of one date aren't reordered */
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    /** Rates not yet taken by a flush by currency code by date */
+    private Map<LocalDate, Map<String, CurrencyRate>> pending = new HashMap<>();
+
+    /** Rates taken by the running flush that may be not written yet */
+    private Map<LocalDate, Map<String, CurrencyRate>> flushing = Map.of();
+
+    /** Versions of the last changes of the pending rates by date */
+    private Map<LocalDate, Long> pendingVersions = new HashMap<>();
+
+    /** Versions of the rates taken by the running flush by date */
+    private Map<LocalDate, Long> flushingVersions = Map.of();
+
+    /** Incremented before and after each write of a flush by the holder of the flush lock */
+    private volatile long writeSequence;
+
+    private int pendingRates;
+    private boolean flushScheduled;
+    private boolean closed;
+
+    /** Drops its delayed flushes at shutdown, a running flush completes */
+    private final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, task -> {
+        Thread thread = new Thread(task, "write-behind-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Params: delegate - data store the rates are written to
+     *         maxPendingRates - number of pending rates that triggers a flush
+     *         maxDelayMillis - time after the first pending rate that triggers a flush
+     */
+    public WriteBehindDataStoreRep(DataStoreRep delegate, int maxPendingRates, long maxDelayMillis) {
+        Objects.requireNonNull(delegate);
+        if (maxPendingRates <= 0 || maxDelayMillis <= 0)
+            throw new IllegalArgumentException("Thresholds of the write-behind buffer must be positive.");
+
+        this.delegate = delegate;
+        this.maxPendingRates = maxPendingRates;
+        this.maxDelayMillis = maxDelayMillis;
+        scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /** Returns the data store the rates are written to */
+    public DataStoreRep getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Adds rates to the buffer. If the buffer reaches the maximum number of rates, it is flushed by this call.
+     * Throws: IllegalStateException - if the buffer is closed
+     */
+    @Override
+    public void putExchangeRate(LocalDate date, Map<String, CurrencyRate> currencyRate) {
+        if (currencyRate.isEmpty()) return;
+
+        boolean full;
+        synchronized (lock) {
+            if (closed)
+                throw new IllegalStateException("Write-behind buffer is closed.");
+
+            Map<String, CurrencyRate> datePending = pending.computeIfAbsent(date, ignored -> new HashMap<>());
+            for (Map.Entry<String, CurrencyRate> rate : currencyRate.entrySet()) {
+                if (datePending.put(rate.getKey(), rate.getValue()) == null) pendingRates++;
+                else if (Metrics.enabled()) COALESCED_RATES.increment();
+            }
+
+            pendingVersions.put(date, RateSnapshot.nextVersion());
+
+            full = pendingRates >= maxPendingRates;
+            if (!full) scheduleFlush();
+        }
+
+        if (full) flush();
+    }
+
+    /** Schedules a flush after the maximum delay if none is scheduled. Must be called under the lock */
+    private void scheduleFlush() {
+        if (flushScheduled || closed) return;
+
+        flushScheduled = true;
+        scheduler.schedule(this::scheduledFlush, maxDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void scheduledFlush() {
+        synchronized (lock) {
+            flushScheduled = false;
+        }
+
+        try {
+            flush();
+        } catch (RuntimeException exception) {
+            // the rates of failed dates are pending again and retried by the next flush
+            Metrics.recordError(exception);
+        }
+    }
+
+    /**
+     * Writes all pending rates to the data store, one write per date in date order.
+     * The rates of a date whose write fails become pending again, unless newer rates of the same currencies are pending.
+     * Throws: RuntimeException - the first failure of a date, after all other dates are written
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            Map<LocalDate, Map<String, CurrencyRate>> batch;
+            synchronized (lock) {
+                batch = pending;
+                if (batch.isEmpty()) return;
+
+                pending = new HashMap<>();
+                pendingRates = 0;
+                flushing = batch;
+                flushingVersions = pendingVersions;
+                pendingVersions = new HashMap<>();
+            }
+
+            Map<LocalDate, Map<String, CurrencyRate>> failed = new HashMap<>();
+            RuntimeException failure = null;
+            for (Map.Entry<LocalDate, Map<String, CurrencyRate>> date : new TreeMap<>(batch).entrySet()) {
+                writeSequence++;
+                try {
+                    delegate.putExchangeRate(date.getKey(), date.getValue());
+                } catch (RuntimeException exception) {
+                    failed.put(date.getKey(), date.getValue());
+                    if (failure == null) failure = exception;
+                    else failure.addSuppressed(exception);
+                } finally {
+                    writeSequence++;
+                }
+            }
+
+            synchronized (lock) {
+                flushing = Map.of();
+                flushingVersions = Map.of();
+                for (Map.Entry<LocalDate, Map<String, CurrencyRate>> date : failed.entrySet()) {
+                    pendingVersions.put(date.getKey(), RateSnapshot.nextVersion());
+                    Map<String, CurrencyRate> datePending = pending.computeIfAbsent(date.getKey(), ignored -> new HashMap<>());
+                    for (Map.Entry<String, CurrencyRate> rate : date.getValue().entrySet()) {
+                        if (datePending.putIfAbsent(rate.getKey(), rate.getValue()) == null) pendingRates++;
+                    }
+                }
+                if (!pending.isEmpty()) scheduleFlush();
+            }
+
+            if (Metrics.enabled()) {
+                FLUSHES.increment();
+                FLUSHED_DATES.add(batch.size() - failed.size());
+            }
+            if (failure != null) throw failure;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Stops the background flushes and writes the pending rates. Later writes fail.
+     * A running background flush isn't interrupted: an interrupt during a write closes the file channels
+     * of the data store. The pending rates are written after it completes.
+     * Throws: RuntimeException - if a pending date can't be written
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+        }
+        scheduler.shutdown();
+        awaitScheduler();
+
+        flush();
+    }
+
+    /** Waits for the running background flush, an interrupt is kept for the caller */
+    private void awaitScheduler() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (scheduler.awaitTermination(maxDelayMillis, TimeUnit.MILLISECONDS)) break;
+            } catch (InterruptedException exception) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Removes the stored rate of the currency and then the pending one, so a read that doesn't find
+     * the date in the buffer sees the removal in the data store.
+     * Returns true if either of them existed
+     */
+    @Override
+    public boolean removeExchangeRate(LocalDate date, String currency) {
+        flushLock.lock();
+        try {
+            boolean removedStored = delegate.removeExchangeRate(date, currency);
+
+            boolean removedPending = false;
+            synchronized (lock) {
+                Map<String, CurrencyRate> datePending = pending.get(date);
+                if (datePending != null && datePending.remove(currency) != null) {
+                    pendingRates--;
+                    removedPending = true;
+                    if (datePending.isEmpty()) {
+                        pending.remove(date);
+                        pendingVersions.remove(date);
+                    } else {
+                        pendingVersions.put(date, RateSnapshot.nextVersion());
+                    }
+                }
+            }
+
+            return removedStored || removedPending;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the buffered rates of the date or null if there are none. The buffered rates must be taken
+     * before the rates of the data store are read: a flush writes the data store before it drops its rates.
+     */
+    private RateSnapshot bufferedSnapshot(LocalDate date) {
+        synchronized (lock) {
+            Map<String, CurrencyRate> flushingRates = flushing.get(date);
+            Map<String, CurrencyRate> pendingRates = pending.get(date);
+            if (flushingRates == null && pendingRates == null) return null;
+
+            Map<String, CurrencyRate> rates = new HashMap<>();
+            long version = RateSnapshot.UNVERSIONED;
+            if (flushingRates != null) {
+                rates.putAll(flushingRates);
+                version = flushingVersions.get(date);
+            }
+            if (pendingRates != null) {
+                rates.putAll(pendingRates);
+                version = Math.max(version, pendingVersions.get(date));
+            }
+            return new RateSnapshot(date, version, rates);
+        }
+    }
+
+    /** Lays the buffered rates over the stored ones, the result has the version of the buffered rates */
+    private static RateSnapshot merge(Map<String, CurrencyRate> stored, RateSnapshot buffered) {
+        Map<String, CurrencyRate> rates = new HashMap<>(stored);
+        rates.putAll(buffered.getRates());
+
+        return new RateSnapshot(buffered.getDate(), buffered.getVersion(), rates);
+    }
+
+    private SortedSet<LocalDate> bufferedDates() {
+        synchronized (lock) {
+            if (pending.isEmpty() && flushing.isEmpty()) return null;
+
+            SortedSet<LocalDate> dates = new TreeSet<>(pending.keySet());
+            dates.addAll(flushing.keySet());
+            return dates;
+        }
+    }
+
+    @Override
+    public Map<String, CurrencyRate> getCurrencyRateMap(LocalDate date) {
+        RateSnapshot buffered = bufferedSnapshot(date);
+
+        Map<String, CurrencyRate> currencyRateMap = delegate.getCurrencyRateMap(date);
+        return buffered == null ? currencyRateMap : merge(currencyRateMap, buffered).getRates();
+    }
+
+    /**
+     * Returns the stored snapshot laid over by the buffered rates. The stored snapshot of a date found without
+     * buffered rates is read again if a flush wrote in the meantime: the written date may still be in the buffer
+     * with a smaller version, and a later read would go back to it.
+     */
+    @Override
+    public RateSnapshot getSnapshot(LocalDate date) {
+        while (true) {
+            long sequence = writeSequence;
+            RateSnapshot buffered = bufferedSnapshot(date);
+            if (buffered != null) return merge(delegate.getCurrencyRateMap(date), buffered);
+
+            RateSnapshot stored = delegate.getSnapshot(date);
+            if (sequence == writeSequence) return stored;
+        }
+    }
+
+    @Override
+    public CurrencyRate getCurrencyRate(LocalDate date, Currency currency) {
+        RateSnapshot buffered = bufferedSnapshot(date);
+        CurrencyRate rate = buffered == null ? null : buffered.getRate(currency);
+
+        return rate != null ? rate : delegate.getCurrencyRate(date, currency);
+    }
+
+    @Override
+    public SortedSet<LocalDate> getDates() {
+        SortedSet<LocalDate> buffered = bufferedDates();
+
+        SortedSet<LocalDate> dates = delegate.getDates();
+        if (buffered == null) return dates;
+
+        buffered.addAll(dates);
+        return buffered;
+    }
+
+    @Override
+    public SortedSet<LocalDate> getDates(LocalDate from, LocalDate to) {
+        SortedSet<LocalDate> buffered = bufferedDates();
+
+        SortedSet<LocalDate> dates = delegate.getDates(from, to);
+        if (buffered == null) return dates;
+
+        SortedSet<LocalDate> merged = new TreeSet<>(buffered.subSet(from, to.plusDays(1)));
+        merged.addAll(dates);
+        return merged;
+    }
+
+    @Override
+    public LocalDate getFloorDate(LocalDate date) {
+        SortedSet<LocalDate> buffered = bufferedDates();
+
+        LocalDate floorDate = delegate.getFloorDate(date);
+        if (buffered == null) return floorDate;
+
+        SortedSet<LocalDate> earlierBuffered = buffered.headSet(date.plusDays(1));
+        if (earlierBuffered.isEmpty()) return floorDate;
+
+        LocalDate bufferedFloor = earlierBuffered.last();
+        return floorDate == null || bufferedFloor.isAfter(floorDate) ? bufferedFloor : floorDate;
+    }
+
+    /**
+     * Exchanges with the rules of the data store. Dates with buffered rates are exchanged on the merged rates.
+     * Throws: CurrencyDataException - when currencies don't exist on a specific date
+     */
+    @Override
+    public BigDecimal exchangeCurrency(LocalDate date, BigDecimal amount, Currency fromCurrency, Currency targetCurrency,
+                                       LocalCurrency localCurrency) {
+        return isBuffered(date)
+                ? DataStoreRep.super.exchangeCurrency(date, amount, fromCurrency, targetCurrency, localCurrency)
+                : delegate.exchangeCurrency(date, amount, fromCurrency, targetCurrency, localCurrency);
+    }
+
+    @Override
+    public Map<Currency, BigDecimal> quoteCurrency(LocalDate date, BigDecimal amount, Currency fromCurrency,
+                                                   LocalCurrency localCurrency) {
+        return isBuffered(date)
+                ? DataStoreRep.super.quoteCurrency(date, amount, fromCurrency, localCurrency)
+                : delegate.quoteCurrency(date, amount, fromCurrency, localCurrency);
+    }
+
+    @Override
+    public BigDecimal valueHoldings(LocalDate date, Map<Currency, BigDecimal> holdings, LocalCurrency localCurrency) {
+        return isBuffered(date)
+                ? DataStoreRep.super.valueHoldings(date, holdings, localCurrency)
+                : delegate.valueHoldings(date, holdings, localCurrency);
+    }
+
+    private boolean isBuffered(LocalDate date) {
+        synchronized (lock) {
+            return pending.containsKey(date) || flushing.containsKey(date);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package service;
+
+import model.CurrencyRate;
+import model.LocalCurrency;
+import repository.DataStoreRep;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Currency;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+
+/**
+ * Runs the calls of a RateService on an executor, by default one virtual thread per call.
+ * Concurrent requests of one date share a single in-flight load: the first request reads the date,
+ * the others wait for its result, so a burst of requests for one date reads its files once.
+ * A request that arrives while a load is in flight gets the rates read by that load.
+ */
+public class AsyncCurrencyRateService implements AsyncRateService, AutoCloseable {
+
+    private final RateService service;
+    private final ExecutorService executor;
+
+    /** Loads of dates that haven't completed yet */
+    private final Map<LocalDate, CompletableFuture<Map<String, CurrencyRate>>> loads = new ConcurrentHashMap<>();
+
+    public AsyncCurrencyRateService(RateService service) {
+        this(service, newExecutor());
+    }
+
+    /**
+     * Params: service - blocking service that performs the calls
+     *         executor - executor of the calls, shut down by close
+     */
+    public AsyncCurrencyRateService(RateService service, ExecutorService executor) {
+        Objects.requireNonNull(service);
+        Objects.requireNonNull(executor);
+
+        this.service = service;
+        this.executor = executor;
+    }
+
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException exception) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Returns a future of the unmodifiable map of exchange rates. Requests of a date that is being loaded
+     * join the load instead of starting a new one.
+     * Params: date - date of currency rate
+     */
+    @Override
+    public CompletableFuture<Map<String, CurrencyRate>> getMap(LocalDate date) {
+        Objects.requireNonNull(date);
+
+        CompletableFuture<Map<String, CurrencyRate>> load = loads.get(date);
+        if (load == null) {
+            CompletableFuture<Map<String, CurrencyRate>> newLoad = new CompletableFuture<>();
+            load = loads.putIfAbsent(date, newLoad);
+            if (load == null) {
+                load = newLoad;
+                startLoad(date, newLoad);
+            }
+        }
+
+        // a copy, so a caller completing its future doesn't complete the futures of other callers
+        return load.copy();
+    }
+
+    private void startLoad(LocalDate date, CompletableFuture<Map<String, CurrencyRate>> load) {
+        try {
+            executor.execute(() -> {
+                Map<String, CurrencyRate> currencyRateMap;
+                try {
+                    currencyRateMap = service.getMap(date);
+                } catch (Throwable throwable) {
+                    loads.remove(date, load);
+                    load.completeExceptionally(throwable);
+                    return;
+                }
+
+                // removed before completion, so requests after the completion read the date again
+                loads.remove(date, load);
+                load.complete(currencyRateMap);
+            });
+        } catch (RejectedExecutionException exception) {
+            loads.remove(date, load);
+            load.completeExceptionally(exception);
+        }
+    }
+
+    /**
+     * Returns a future of the exchange result computed with the rules of DataStoreRep.exchange on the rates
+     * loaded through getMap, so exchanges of one date share the load with each other and with getMap requests
+     * and the data store isn't read again.
+     * Params: date - date of exchange rate
+     *         amount - amount of money in "fromCurrency" currency
+     *         fromCurrency - the currency for exchange
+     *         targetCurrency - the currency for purchase
+     *         localCurrency - basic currency
+     */
+    @Override
+    public CompletableFuture<BigDecimal> exchange(LocalDate date, BigDecimal amount, Currency fromCurrency,
+                                                  Currency targetCurrency, LocalCurrency localCurrency) {
+        return getMap(date).thenApply(currencyRateMap -> DataStoreRep.exchange(amount, fromCurrency, targetCurrency,
+                localCurrency, currency -> currencyRateMap.get(currency.getCurrencyCode())));
+    }
+
+    /** Stops accepting calls, calls in progress are completed */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
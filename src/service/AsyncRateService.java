@@ -0,0 +1,19 @@
+package service;
+
+import model.CurrencyRate;
+import model.LocalCurrency;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Currency;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variant of RateService. If the blocking call would throw an ApplicationException,
+ * the future completes exceptionally with it as the cause.
+ */
+public interface AsyncRateService {
+    CompletableFuture<Map<String, CurrencyRate>> getMap(LocalDate date);
+    CompletableFuture<BigDecimal> exchange(LocalDate date, BigDecimal amount, Currency fromCurrency, Currency targetCurrency, LocalCurrency localCurrency);
+}
@@ -1,28 +1,91 @@
 package service;
 
+import exceptions.ApplicationException;
 import model.CurrencyRate;
+import model.DatedAmount;
+import model.DatedCurrencyRate;
 import model.LocalCurrency;
-import repository.CurrencyRepository;
+import model.RateSnapshot;
+import repository.DataStoreRep;
+import repository.WriteBehindDataStoreRep;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
-import java.util.Currency;
-import java.util.Map;
-import java.util.Objects;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public class CurrencyRateService implements RateService {
+public class CurrencyRateService implements RateService, AutoCloseable {
 
-    private final CurrencyRepository repository;
-    private Map<String, CurrencyRate> currencyRateMap;
+    /** Number of dates valued ahead of the consumer of a revaluation per thread, bounds the results waiting for earlier dates */
+    private final static int REVALUATION_DATES_PER_THREAD = 16;
 
-    public CurrencyRateService(CurrencyRepository repository) {
+    private final DataStoreRep repository;
+
+    /** Buffer of saved rates if the service writes behind, else null */
+    private final WriteBehindDataStoreRep writeBehind;
+
+    /** If true, rates of a date without stored rates are taken from the latest earlier date */
+    private final boolean asOfLookup;
+
+    public CurrencyRateService(DataStoreRep repository) {
+        this(repository, false);
+    }
+
+    public CurrencyRateService(DataStoreRep repository, boolean asOfLookup) {
         Objects.requireNonNull(repository);
 
         this.repository = repository;
+        this.writeBehind = repository instanceof WriteBehindDataStoreRep buffer ? buffer : null;
+        this.asOfLookup = asOfLookup;
+    }
+
+    /**
+     * Creates a service that writes behind: saved rates are buffered and coalesced by date and currency,
+     * and each date is written once when the buffer is flushed. Reads see the buffered rates.
+     * Params: maxPendingRates - number of buffered rates that triggers a flush
+     *         maxDelayMillis - time after the first buffered rate that triggers a flush
+     */
+    public CurrencyRateService(DataStoreRep repository, boolean asOfLookup, int maxPendingRates, long maxDelayMillis) {
+        this(new WriteBehindDataStoreRep(repository, maxPendingRates, maxDelayMillis), asOfLookup);
+    }
+
+    /**
+     * Writes the buffered rates to the data store. Does nothing if the service doesn't write behind.
+     * Throws: RuntimeException - if a buffered date can't be written, its rates stay buffered
+     */
+    public void flush() {
+        if (writeBehind != null) writeBehind.flush();
+    }
+
+    /**
+     * Writes the buffered rates and stops the background flushes, later saves fail.
+     * Does nothing if the service doesn't write behind.
+     */
+    @Override
+    public void close() {
+        if (writeBehind != null) writeBehind.close();
+    }
+
+    /**
+     * Returns the date whose rates are used for a request. In as-of mode it is the latest stored date
+     * on or before the requested one, e.g. the previous business day for a weekend.
+     * Params: date - requested date
+     */
+    private LocalDate effectiveDate(LocalDate date) {
+        if (!asOfLookup) return date;
+
+        LocalDate floorDate = repository.getFloorDate(date);
+        return floorDate == null ? date : floorDate;
     }
 
     /**
-     * Adds currency to a file, if currency exists, it'll be overwritten
+     * Adds currency to a file, if currency exists, it'll be overwritten.
+     * In write-behind mode the rates are buffered and written by a later flush
      */
     @Override
     public void saveExchangeRate(LocalDate date, Map<String, CurrencyRate> currencyRate) {
@@ -30,29 +93,88 @@ public class CurrencyRateService implements RateService {
     }
 
     /**
-     * Gets currencies from a file. Deletes a specific currency,
-     * if it exists, and writes the map to a file.
+     * Saves rates of many dates. Each date is written once, dates are written in parallel on a fork-join pool.
+     * A failed date doesn't stop the others. The write-behind buffer is flushed first and then bypassed,
+     * each date is written once anyway and a failure must be reported for its date.
+     * Returns the failed dates with error messages
+     * Params: ratesByDate - rates grouped by date
+     */
+    @Override
+    public Map<LocalDate, String> saveExchangeRates(Map<LocalDate, Map<String, CurrencyRate>> ratesByDate) {
+        if (writeBehind != null) writeBehind.flush();
+        DataStoreRep target = writeBehind != null ? writeBehind.getDelegate() : repository;
+        Map<LocalDate, String> failures = new ConcurrentHashMap<>();
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+        try {
+            pool.submit(() -> ratesByDate.entrySet().parallelStream().forEach(entry -> {
+                try {
+                    target.putExchangeRate(entry.getKey(), entry.getValue());
+                } catch (ApplicationException exception) {
+                    failures.put(entry.getKey(), exception.getMessage());
+                } catch (RuntimeException exception) {
+                    failures.put(entry.getKey(), "Неизвестная ошибка");
+                }
+            })).get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(exception);
+        } catch (ExecutionException exception) {
+            throw new IllegalStateException(exception.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        return failures;
+    }
+
+    /**
+     * Deletes a specific currency from the data store, if it exists.
      * Returns true if the currency has been deleted, and false if the currency hasn't been deleted
      * Params: date - date of currency rate
      *         currencyToRemove - currency to be deleted
      */
+    @Override
     public boolean removeExchangeRate(LocalDate date, String currencyToRemove) {
-        currencyRateMap = repository.getCurrencyRateMap(date);
-
-        CurrencyRate removedCurrency = currencyRateMap.remove(currencyToRemove);
-        repository.putExchangeRate(date, currencyRateMap);
-
-        return removedCurrency != null;
+        return repository.removeExchangeRate(date, currencyToRemove);
     }
 
     /**
-     * Returns a map of exchange rates
+     * Returns the unmodifiable map of exchange rates. In as-of mode the rates of the latest earlier date are returned
+     * if the date has no stored rates.
      * Params: date - date of currency rate
      */
     @Override
     public Map<String, CurrencyRate> getMap(LocalDate date) {
-        currencyRateMap = repository.getCurrencyRateMap(date);
-        return currencyRateMap;
+        return repository.getCurrencyRateMap(effectiveDate(date));
+    }
+
+    /**
+     * Returns the immutable snapshot of exchange rates, it may be shared between threads without copying.
+     * In as-of mode it is the snapshot of the latest earlier date if the date has no stored rates,
+     * the date of the snapshot is the date whose rates are returned.
+     * Params: date - date of currency rate
+     */
+    @Override
+    public RateSnapshot getSnapshot(LocalDate date) {
+        return repository.getSnapshot(effectiveDate(date));
+    }
+
+    /**
+     * Returns rates of the currency on all stored dates of the range in date order.
+     * The stream is lazy: a date is read only when the stream reaches it, dates without files are never read.
+     * Params: from - first date of the range
+     *         to - last date of the range
+     *         currency - currency of the rates
+     */
+    @Override
+    public Stream<DatedCurrencyRate> getHistory(LocalDate from, LocalDate to, Currency currency) {
+        return repository.getDates(from, to).stream()
+                .map(date -> {
+                    CurrencyRate rate = repository.getCurrencyRate(date, currency);
+                    return rate == null ? null : new DatedCurrencyRate(date, rate);
+                })
+                .filter(Objects::nonNull);
     }
 
     /**
@@ -62,9 +184,84 @@ public class CurrencyRateService implements RateService {
     *         fromCurrency - the currency for exchange
     *         tragetCurrency - the currency for purchase
     *         localCurrency - basic currency 
+    * In as-of mode the rates of the latest earlier date are used if the date has no stored rates.
     */
     @Override
     public BigDecimal exchange(LocalDate date, BigDecimal amount, Currency fromCurrency, Currency targetCurrency, LocalCurrency localCurrency) {
-        return repository.exchangeCurrency(date, amount, fromCurrency, targetCurrency, localCurrency);
+        return repository.exchangeCurrency(effectiveDate(date), amount, fromCurrency, targetCurrency, localCurrency);
+    }
+
+    /**
+     * Exchanges the amount into every currency stored on a date with the same arithmetic as exchange,
+     * the rates of the date are read once.
+     * Returns results by target currency in the order of currency codes
+     * Params: date - date of exchange rate
+     *         amount - amount of money in "fromCurrency" currency
+     *         fromCurrency - the currency for exchange
+     *         localCurrency - basic currency
+     */
+    @Override
+    public Map<Currency, BigDecimal> quote(LocalDate date, BigDecimal amount, Currency fromCurrency, LocalCurrency localCurrency) {
+        return repository.quoteCurrency(effectiveDate(date), amount, fromCurrency, localCurrency);
+    }
+
+    /**
+     * Values holdings in the local currency on all stored dates of the range. Each date is valued in one pass
+     * over its rates, dates are valued in parallel on a fork-join pool a bounded window ahead of the consumer,
+     * and the totals are streamed in date order. Dates without a rate needed for the valuation are skipped.
+     * The stream must be closed, closing it stops the pool.
+     * Params: from - first date of the range
+     *         to - last date of the range
+     *         holdings - amounts by currency
+     *         localCurrency - basic currency, the currency of the totals
+     */
+    @Override
+    public Stream<DatedAmount> revalue(LocalDate from, LocalDate to, Map<Currency, BigDecimal> holdings,
+                                       LocalCurrency localCurrency) {
+        Map<Currency, BigDecimal> holdingsCopy = Map.copyOf(holdings);
+        Iterator<LocalDate> dates = List.copyOf(repository.getDates(from, to)).iterator();
+
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int windowSize = parallelism * REVALUATION_DATES_PER_THREAD;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        Deque<ForkJoinTask<DatedAmount>> window = new ArrayDeque<>(windowSize);
+
+        Iterator<DatedAmount> totals = new Iterator<>() {
+
+            private DatedAmount next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null) {
+                    while (window.size() < windowSize && dates.hasNext()) {
+                        LocalDate date = dates.next();
+                        window.add(pool.submit(() -> {
+                            BigDecimal total = repository.valueHoldings(date, holdingsCopy, localCurrency);
+                            return total == null ? null : new DatedAmount(date, total);
+                        }));
+                    }
+                    if (window.isEmpty()) return false;
+
+                    next = window.poll().join();
+                }
+
+                return true;
+            }
+
+            @Override
+            public DatedAmount next() {
+                if (!hasNext()) throw new NoSuchElementException();
+
+                DatedAmount total = next;
+                next = null;
+                return total;
+            }
+        };
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(totals, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    window.forEach(task -> task.cancel(false));
+                    pool.shutdown();
+                });
     }
 }
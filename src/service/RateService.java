@@ -1,17 +1,26 @@
 package service;
 
 import model.CurrencyRate;
+import model.DatedAmount;
+import model.DatedCurrencyRate;
 import model.LocalCurrency;
+import model.RateSnapshot;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.Currency;
 import java.util.Map;
+import java.util.stream.Stream;
 
 public interface RateService {
     void saveExchangeRate(LocalDate date, Map<String, CurrencyRate> currency);
+    Map<LocalDate, String> saveExchangeRates(Map<LocalDate, Map<String, CurrencyRate>> ratesByDate);
     boolean removeExchangeRate(LocalDate date, String currency);
 
     Map<String, CurrencyRate> getMap(LocalDate date);
+    RateSnapshot getSnapshot(LocalDate date);
+    Stream<DatedCurrencyRate> getHistory(LocalDate from, LocalDate to, Currency currency);
     BigDecimal exchange(LocalDate date, BigDecimal amount, Currency fromCurrency, Currency targetCurrency, LocalCurrency localCurrency);
+    Map<Currency, BigDecimal> quote(LocalDate date, BigDecimal amount, Currency fromCurrency, LocalCurrency localCurrency);
+    Stream<DatedAmount> revalue(LocalDate from, LocalDate to, Map<Currency, BigDecimal> holdings, LocalCurrency localCurrency);
 }